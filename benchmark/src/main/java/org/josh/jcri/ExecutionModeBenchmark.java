@@ -0,0 +1,78 @@
+package org.josh.jcri;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Cost of each {@link ExecutionMode} on command round trip with an asynchronous stage, and on event
+ delivery to a listener running in connection's executor. {@link ExecutionMode#VIRTUAL_THREADS} fails
+ in setup on Java before 21.
+ @author Joshua */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+    private static final int EventBurst = 64;
+
+    @Param({"SAME_THREAD", "BOUNDED_POOL", "VIRTUAL_THREADS"})
+    public String mode;
+
+    private FakeBrowser _browser;
+    private EventCenter _evt;
+    private WebSocket _ws;
+    private String _event;
+    private final AtomicLong _received = new AtomicLong(0);
+    private long _sent = 0;
+
+    @Setup(Level.Trial) public void setup() throws InterruptedException {
+        final ExecutionMode executionMode = ExecutionMode.valueOf(mode);
+        if (!executionMode.isSupported())
+            throw new IllegalStateException(mode + " is not supported by Java " + System.getProperty("java.version"));
+        _browser = new FakeBrowser().startAndWait();
+        _evt = new EventCenter(null, executionMode);
+        _ws = new WebSocket(_browser.getDebuggerUrl(), 0, _evt::onMessage, null, null);
+        if (!_ws.connectBlocking())     throw new IllegalStateException("Fail to connect fake browser");
+        _event = FakeBrowser.eventOf("Page.lifecycleEvent",
+            "{\"frameId\":\"F1\",\"loaderId\":\"L1\",\"name\":\"load\",\"timestamp\":1234.5}");
+        _evt.getEventRegistry().subscribe("Page.lifecycleEvent", OnMessageBenchmark.LifecycleEvent.class,
+            e -> _received.incrementAndGet(), null);
+    }
+
+    @TearDown(Level.Trial) public void tearDown() throws Exception {
+        _ws.closeBlocking();
+        _browser.stop();
+        _evt.getExecutor().shutdown();
+    }
+
+    /**Send a command and continue with an asynchronous stage, which runs in connection's executor on
+     Java 9 and later.*/
+    @Benchmark public Object roundTrip() {
+        return new NavigateMethod(_evt, _ws, "https://example.com/index.html", "", "typed").send()
+            .thenApplyAsync(result -> result).join();
+    }
+
+    /**Dispatch a burst of events and wait until listener receives all of them.*/
+    @Benchmark @BenchmarkMode(Mode.AverageTime) @OperationsPerInvocation(EventBurst)
+    public long eventDelivery() {
+        for (int i = 0; i < EventBurst; ++i)    _evt.onMessage(_event);
+        _sent += EventBurst;
+        while (_received.get() < _sent)     Thread.yield();
+        return _sent;
+    }
+}
@@ -0,0 +1,86 @@
+package org.josh.jcri;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**In-process stand-in of browser's debugging endpoint for benchmarks.
+ It accepts protocol commands in CDP envelope, and replays a canned result registered by
+ {@link #reply(String, String)} for the command's method (<pre>{}</pre> if none) with the same Id and
+ session Id. Nothing is parsed by Jackson, so measured time is spent in JCRI and the socket only.
+ @author Joshua */
+final class FakeBrowser extends WebSocketServer {
+    /**Canned result json keyed by method name.*/
+    private final Map<String, String> _results = new ConcurrentHashMap<>();
+    private final CountDownLatch _started = new CountDownLatch(1);
+
+    /**Create endpoint listening on a random local port, call {@link #startAndWait()} to start.*/
+    public FakeBrowser() {
+        super(new InetSocketAddress("127.0.0.1", 0));
+        setTcpNoDelay(true);
+    }
+
+    /**Start server and wait until it is ready to accept connections.*/
+    public FakeBrowser startAndWait() throws InterruptedException {
+        start();
+        if (!_started.await(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("Fake browser does not start in time");
+        return this;
+    }
+
+    /**Get web socket debugger url of this endpoint.*/
+    public URI getDebuggerUrl() {
+        return URI.create("ws://127.0.0.1:" + getPort() + "/devtools/browser/fake");
+    }
+
+    /**Register canned result of given method.
+     @param method method name such as <pre>"Page.navigate"</pre>.
+     @param resultJson json object replied as <pre>result</pre> field. */
+    public FakeBrowser reply(String method, String resultJson) {
+        _results.put(method, resultJson);
+        return this;
+    }
+
+    /**Build a reply message in CDP envelope.*/
+    public static String replyOf(long id, String resultJson) {
+        return "{\"id\":" + id + ",\"result\":" + resultJson + "}";
+    }
+
+    /**Build an event message in CDP envelope.*/
+    public static String eventOf(String method, String paramsJson) {
+        return "{\"method\":\"" + method + "\",\"params\":" + paramsJson + "}";
+    }
+
+    /**Find string value of given top level field, assume field name is unique in command.*/
+    private static String stringField(String message, String field) {
+        final String key = "\"" + field + "\":\"";
+        final int start = message.indexOf(key);
+        if (start < 0)  return null;
+        return message.substring(start + key.length(), message.indexOf('"', start + key.length()));
+    }
+
+    @Override public void onMessage(WebSocket conn, String message) {
+        //! Command always starts with {"id":N as written by MethodBase.toCommand()
+        final int start = message.indexOf(':') + 1;
+        int end = start;
+        while (end < message.length() && Character.isDigit(message.charAt(end)))  ++end;
+        final String id = message.substring(start, end);
+        final String method = stringField(message, "method");
+        final String sessionId = stringField(message, "sessionId");
+        final String result = method != null ? _results.getOrDefault(method, "{}") : "{}";
+        conn.send(sessionId == null
+            ? "{\"id\":" + id + ",\"result\":" + result + "}"
+            : "{\"id\":" + id + ",\"sessionId\":\"" + sessionId + "\",\"result\":" + result + "}");
+    }
+
+    @Override public void onStart() { _started.countDown(); }
+    @Override public void onOpen(WebSocket conn, ClientHandshake handshake) { }
+    @Override public void onClose(WebSocket conn, int code, String reason, boolean remote) { }
+    @Override public void onError(WebSocket conn, Exception ex) { ex.printStackTrace(); }
+}
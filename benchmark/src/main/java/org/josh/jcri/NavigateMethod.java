@@ -0,0 +1,46 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.concurrent.CompletableFuture;
+
+/**Hand written equivalent of a generated domain method (<pre>Page.navigate</pre>) for benchmarks.
+ @author Joshua */
+final class NavigateMethod extends MethodBase {
+    private final String url;
+    private final String referrer;
+    private final String transitionType;
+
+    NavigateMethod(EventCenter eventCenter, WebSocket webSocket, String url, String referrer, String transitionType) {
+        super(eventCenter, webSocket);
+        this.url = url; this.referrer = referrer; this.transitionType = transitionType;
+    }
+
+    @Override protected String getMethodName() { return "Page.navigate"; }
+
+    @Override public void check() {
+        if (url.isEmpty())  throw new IllegalArgumentException("url is empty");
+    }
+
+    /**Escape string with Jackson as generated classes do.*/
+    @Override public StringBuilder toJson(StringBuilder strBuilder) {
+        try {
+            return strBuilder.append("{\"url\":").append(EventCenter.serializeJson(url))
+                .append(",\"referrer\":").append(EventCenter.serializeJson(referrer))
+                .append(",\"transitionType\":").append(EventCenter.serializeJson(transitionType))
+                .append('}');
+        }
+        catch (JsonProcessingException e) { throw new IllegalArgumentException(e); }
+    }
+
+    /**Write UTF-8 json directly.*/
+    Utf8JsonBuffer toJsonDirect(Utf8JsonBuffer buffer) {
+        return buffer.appendAscii("{\"url\":").appendString(url)
+            .appendAscii(",\"referrer\":").appendString(referrer)
+            .appendAscii(",\"transitionType\":").appendString(transitionType)
+            .append('}');
+    }
+
+    CompletableFuture<EmptyResult> send() {
+        return call(EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+    }
+}
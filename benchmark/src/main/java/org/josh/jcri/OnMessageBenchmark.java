@@ -0,0 +1,101 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Dispatch throughput of {@link EventCenter#onMessage(String)} with canned browser messages.
+ Socket is not involved, so only envelope parsing, waiting table lookup, binding, and listener
+ delivery are measured. Listeners run on calling thread.
+ @author Joshua */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OnMessageBenchmark {
+    /**Count of distinct method Ids replied, must be power of 2.*/
+    private static final int IdCount = 1024;
+
+    /**Size of event parameters: small is a lifecycle event, large carries a long url and headers.*/
+    @Param({"small", "large"})
+    public String payload;
+
+    private ExecutorService _executor;
+    private EventCenter _evt;
+    private final String[] _replies = new String[IdCount];
+    private String _event;
+    private String _unsubscribedEvent;
+    private long _id = 0;
+    private final AtomicLong _received = new AtomicLong(0);
+
+    @Setup(Level.Trial) public void setup() {
+        _executor = Executors.newSingleThreadExecutor();
+        _evt = new EventCenter(_executor);
+        final String params;
+        if (payload.equals("small"))
+            params = "{\"frameId\":\"F1\",\"loaderId\":\"L1\",\"name\":\"load\",\"timestamp\":1234.5}";
+        else {
+            final StringBuilder headers = new StringBuilder("{");
+            for (int i = 0; i < 20; ++i)
+                headers.append(i == 0 ? "" : ",").append("\"X-Header-").append(i).append("\":\"value-").append(i).append('"');
+            params = "{\"frameId\":\"F1\",\"loaderId\":\"L1\",\"name\":\"https://example.com/"
+                + new String(new char[1000]).replace('\0', 'a') + "\",\"timestamp\":1234.5,\"headers\":"
+                + headers.append('}') + "}";
+        }
+        for (int i = 0; i < IdCount; ++i)   _replies[i] = FakeBrowser.replyOf(i, "{\"frameId\":\"F1\",\"loaderId\":\"L1\"}");
+        _event = FakeBrowser.eventOf("Page.lifecycleEvent", params);
+        _unsubscribedEvent = FakeBrowser.eventOf("Network.dataReceived", params);
+        _evt.getEventRegistry().subscribe("Page.lifecycleEvent", LifecycleEvent.class,
+            e -> _received.incrementAndGet(), Runnable::run);
+    }
+
+    @TearDown(Level.Trial) public void tearDown() { _executor.shutdown(); }
+
+    /**Register a method and dispatch its reply.*/
+    @Benchmark public Object reply() {
+        final int id = (int)(_id++ & (IdCount - 1));
+        final PendingMethod<EmptyResult> method = new PendingMethod<>(
+            _evt, id, EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+        _evt.enqueueMethod(method, 0, TimeUnit.MILLISECONDS);
+        _evt.onMessage(_replies[id]);
+        return method.getNow(null);
+    }
+
+    /**Dispatch an event to a single listener.*/
+    @Benchmark public long event() {
+        _evt.onMessage(_event);
+        return _received.get();
+    }
+
+    /**Dispatch an event that nobody listens.*/
+    @Benchmark public long unsubscribedEvent() {
+        _evt.onMessage(_unsubscribedEvent);
+        return _received.get();
+    }
+
+    /**Event parameters, unknown fields are ignored.*/
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static final class LifecycleEvent {
+        public String frameId;
+        public String loaderId;
+        public String name;
+        public double timestamp;
+    }
+}
@@ -0,0 +1,70 @@
+package org.josh.jcri;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Compare {@link PendingTable} with the previous {@link ConcurrentHashMap} based waiting table.
+ Each operation enqueues a method with a new Id and removes it as browser's reply does, with 1, 8,
+ and 64 concurrent callers.
+ @author Joshua */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PendingTableBenchmark {
+    @Param({"ring", "map"})
+    public String table;
+
+    private final EventCenter _evt = new EventCenter(null);
+    private final AtomicLong _nextId = new AtomicLong(0);
+    private Table _table;
+
+    @Setup(Level.Iteration) public void setup() {
+        _table = table.equals("ring") ? new RingTable() : new MapTable();
+    }
+
+    @Benchmark @Threads(1) public Object callers1() { return roundTrip(); }
+    @Benchmark @Threads(8) public Object callers8() { return roundTrip(); }
+    @Benchmark @Threads(64) public Object callers64() { return roundTrip(); }
+
+    private Object roundTrip() {
+        final long id = _nextId.getAndIncrement();
+        _table.put(new PendingMethod<>(_evt, id, EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e))));
+        return _table.remove(id);
+    }
+
+    /**Waiting table under test.*/
+    private interface Table {
+        boolean put(PendingMethod<?> method);
+        PendingMethod<?> remove(long id);
+    }
+
+    private static final class RingTable implements Table {
+        private final PendingTable _table = new PendingTable(1024, 1 << 20);
+        @Override public boolean put(PendingMethod<?> method) { return _table.put(method); }
+        @Override public PendingMethod<?> remove(long id) { return _table.remove(id); }
+    }
+
+    private static final class MapTable implements Table {
+        private final Map<Long, PendingMethod<?>> _table = new ConcurrentHashMap<>();
+        @Override public boolean put(PendingMethod<?> method) { return _table.putIfAbsent(method.getId(), method) == null; }
+        @Override public PendingMethod<?> remove(long id) { return _table.remove(id); }
+    }
+}
@@ -0,0 +1,68 @@
+package org.josh.jcri;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Command round-trip latency through {@link MethodBase#call} against {@link FakeBrowser}.
+ Includes serializing, registering in waiting table, sending frame, fake browser's reply, and binding
+ result. <pre>pipelined</pre> keeps 64 commands in flight to measure throughput.
+ @author Joshua */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    private static final int PipelineDepth = 64;
+
+    private FakeBrowser _browser;
+    private ExecutorService _executor;
+    private EventCenter _evt;
+    private WebSocket _ws;
+
+    @Setup(Level.Trial) public void setup() throws InterruptedException {
+        _browser = new FakeBrowser().startAndWait();
+        _executor = Executors.newSingleThreadExecutor();
+        _evt = new EventCenter(_executor);
+        _ws = new WebSocket(_browser.getDebuggerUrl(), 0, _evt::onMessage, null, null);
+        if (!_ws.connectBlocking())     throw new IllegalStateException("Fail to connect fake browser");
+    }
+
+    @TearDown(Level.Trial) public void tearDown() throws Exception {
+        _ws.closeBlocking();
+        _browser.stop();
+        _executor.shutdown();
+    }
+
+    private NavigateMethod newMethod() {
+        return new NavigateMethod(_evt, _ws, "https://example.com/index.html", "", "typed");
+    }
+
+    @Benchmark @Threads(1) public EmptyResult callers1() { return newMethod().send().join(); }
+    @Benchmark @Threads(8) public EmptyResult callers8() { return newMethod().send().join(); }
+
+    @Benchmark @BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @OperationsPerInvocation(PipelineDepth)
+    public Object pipelined() {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[PipelineDepth];
+        for (int i = 0; i < PipelineDepth; ++i)     futures[i] = newMethod().send();
+        return CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,68 @@
+package org.josh.jcri;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**Serialization cost of {@link CommonDomainType#toJson} for a typical method.
+ <ul><li>stringBuilder: {@link CommonDomainType#toJson(StringBuilder)} as generated classes do.</li>
+ <li>utf8Default: default {@link CommonDomainType#toJson(Utf8JsonBuffer)} which encodes result of
+ string builder.</li>
+ <li>utf8Direct: writing json into {@link Utf8JsonBuffer} directly.</li>
+ <li>command: whole envelope by {@link MethodBase#toCommand(long, Utf8JsonBuffer)}.</li></ul>
+ @author Joshua */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+    /**Url content: short ASCII, long ASCII, or with non-ASCII characters needing UTF-8 encoding.*/
+    @Param({"short", "long", "unicode"})
+    public String url;
+
+    private NavigateMethod _method;
+    private final StringBuilder _builder = new StringBuilder();
+    private final Utf8JsonBuffer _buffer = new Utf8JsonBuffer();
+
+    @Setup(Level.Trial) public void setup() {
+        final String value;
+        switch (url) {
+        case "short":   value = "https://example.com/";  break;
+        case "long":    value = "https://example.com/search?q=" + new String(new char[2000]).replace('\0', 'q');  break;
+        default:        value = "https://example.com/搜尋?q=測試\"quoted\"\t";  break;
+        }
+        _method = new NavigateMethod(null, null, value, "https://example.com/", "link");
+    }
+
+    @Benchmark public int stringBuilder() {
+        _builder.setLength(0);
+        return _method.toJson(_builder).length();
+    }
+
+    @Benchmark public int utf8Default() {
+        _buffer.reset();
+        return _method.toJson(_buffer).length();
+    }
+
+    @Benchmark public int utf8Direct() {
+        _buffer.reset();
+        return _method.toJsonDirect(_buffer).length();
+    }
+
+    @Benchmark public int command() {
+        _buffer.reset();
+        return _method.toCommand(1, _buffer).length();
+    }
+}
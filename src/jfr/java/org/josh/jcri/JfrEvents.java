@@ -0,0 +1,81 @@
+package org.josh.jcri;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**JDK Flight Recorder events of protocol traffic.
+ This class is in a separate source root which is only compiled on JDK 11 and later (profile
+ <pre>jfr</pre>), and is only loaded by {@link Tracing} when <pre>jdk.jfr</pre> is available. An event
+ object is only filled and committed when its type is enabled in a running recording, otherwise the
+ check is a constant and the allocation is removed by JIT.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class JfrEvents implements Tracing.Recorder {
+    JfrEvents() { }
+
+    @Override public void commandSent(long id, String method, @Nullable String sessionId, int size) {
+        final CommandSent event = new CommandSent();
+        if (!event.isEnabled())     return;
+        event.id = id; event.method = method; event.sessionId = sessionId; event.size = size;
+        event.commit();
+    }
+
+    @Override public void replyReceived(long id, @Nullable String method, int size, long latency, boolean error) {
+        final ReplyReceived event = new ReplyReceived();
+        if (!event.isEnabled())     return;
+        event.id = id; event.method = method; event.size = size; event.latency = latency; event.error = error;
+        event.commit();
+    }
+
+    @Override public void eventReceived(String method, @Nullable String sessionId, int size) {
+        final EventReceived event = new EventReceived();
+        if (!event.isEnabled())     return;
+        event.method = method; event.sessionId = sessionId; event.size = size;
+        event.commit();
+    }
+
+    @Name("org.josh.jcri.CommandSent")
+    @Label("Command Sent")
+    @Category({"JCRI", "Protocol"})
+    @Description("Protocol command is sent to browser")
+    @StackTrace(false)
+    static final class CommandSent extends Event {
+        @Label("Id") long id;
+        @Label("Method") String method;
+        @Label("Session Id") String sessionId;
+        @Label("Size") @DataAmount int size;
+    }
+
+    @Name("org.josh.jcri.ReplyReceived")
+    @Label("Reply Received")
+    @Category({"JCRI", "Protocol"})
+    @Description("Browser replies a protocol command")
+    @StackTrace(false)
+    static final class ReplyReceived extends Event {
+        @Label("Id") long id;
+        @Label("Method") String method;
+        @Label("Size") @Description("Message text length") @DataAmount int size;
+        @Label("Latency") @Description("Duration from sending command to receiving reply")
+        @Timespan long latency;
+        @Label("Error") boolean error;
+    }
+
+    @Name("org.josh.jcri.EventReceived")
+    @Label("Event Received")
+    @Category({"JCRI", "Protocol"})
+    @Description("Protocol event is received from browser")
+    @StackTrace(false)
+    static final class EventReceived extends Event {
+        @Label("Method") String method;
+        @Label("Session Id") String sessionId;
+        @Label("Size") @Description("Message text length") @DataAmount int size;
+    }
+}
@@ -0,0 +1,16 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**Result of method <pre>Target.attachToTarget</pre>.
+ @author Joshua */
+class AttachToTargetResult extends ResultBase {
+    /**Id assigned to the session.*/
+    private final String sessionId;
+
+    @JsonCreator AttachToTargetResult(@JsonProperty("sessionId") String sessionId) { this.sessionId = sessionId; }
+    AttachToTargetResult(FailedResult failedResult) { super(failedResult); sessionId = ""; }
+
+    final String getSessionId() { return sessionId; }
+}
@@ -0,0 +1,56 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Base64 encoded binary field of result or event, such as screenshot image data.
+ If a {@link BinarySink} is given when calling the method (or subscribing the event), data is decoded
+ into sink while message is parsed and {@link #getBytes()} returns null. Otherwise data is decoded into
+ a byte array directly from message, without building the base64 string.
+ @author Joshua */
+@JsonDeserialize(using = BinaryData.Deserializer.class)
+@ParametersAreNonnullByDefault
+public final class BinaryData {
+    /**Count of decoded bytes.*/
+    private final long _length;
+    /**Decoded bytes, null if data is written into sink.*/
+    @Nullable private final byte[] _bytes;
+
+    private BinaryData(long length, @Nullable byte[] bytes) { _length = length; _bytes = bytes; }
+
+    /**Get count of decoded bytes.*/
+    public long getLength() { return _length; }
+    /**Get if data is written into user given sink.*/
+    public boolean isStreamed() { return _bytes == null; }
+    /**Get decoded bytes.
+     @return null if data is written into user given sink. */
+    @Nullable public byte[] getBytes() { return _bytes; }
+
+    /**Jackson deserializer which decodes base64 string token incrementally.
+     Sink is given by deserialization attribute keyed by {@link BinarySink} class.*/
+    static final class Deserializer extends StdDeserializer<BinaryData> {
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() { super(BinaryData.class); }
+
+        @Override public BinaryData deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            final BinarySink sink = (BinarySink)context.getAttribute(BinarySink.class);
+            if (sink == null) {
+                final byte[] bytes = parser.getBinaryValue(Base64Variants.getDefaultVariant());
+                return new BinaryData(bytes.length, bytes);
+            }
+            final int length = parser.readBinaryValue(Base64Variants.getDefaultVariant(), new OutputStream() {
+                @Override public void write(int b) throws IOException { sink.write(new byte[] { (byte)b }, 0, 1); }
+                @Override public void write(byte[] b, int off, int len) throws IOException { sink.write(b, off, len); }
+            });
+            return new BinaryData(length, null);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.josh.jcri;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Destination of decoded binary data, such as screenshot, screencast frame, and PDF.
+ Binary fields ({@link BinaryData}) of result and event are base64 decoded chunk by chunk directly
+ from received message into sink, without building the base64 string or the whole decoded byte
+ array.
+ @author Joshua */
+@FunctionalInterface
+@ParametersAreNonnullByDefault
+public interface BinarySink {
+    /**Write a chunk of decoded bytes.
+     @throws IOException if fail to write. */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**Create sink which writes into given buffer (heap or direct) from its current position.
+     Writing more than remaining bytes of buffer fails with {@link IOException}. */
+    static BinarySink of(ByteBuffer buffer) {
+        return (bytes, offset, length) -> {
+            try { buffer.put(bytes, offset, length); }
+            catch (BufferOverflowException e) {
+                throw new IOException("Buffer has only " + buffer.remaining() + " bytes left but needs " + length, e);
+            }
+        };
+    }
+
+    /**Create sink which writes into given channel, such as {@link java.nio.channels.FileChannel}.*/
+    static BinarySink of(WritableByteChannel channel) {
+        return (bytes, offset, length) -> {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining())   channel.write(buffer);
+        };
+    }
+}
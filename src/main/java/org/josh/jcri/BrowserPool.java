@@ -0,0 +1,332 @@
+package org.josh.jcri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Pool of pre-launched browser processes which are leased to callers with connected {@link JCRI}.
+ Browsers are launched by {@link #start()} from the given command line with
+ <pre>--remote-debugging-port=0</pre> and a temporary <pre>--user-data-dir</pre> appended, and each
+ connection is connected to browser level debugger url, so callers create or attach targets through
+ {@link JCRI#attachToTarget(String)}. Any executable which prints
+ <pre>"DevTools listening on ws://..."</pre> to standard error can stand in for browser.
+ <p>Leasing takes an idle browser without talking to it, so warm starts only cost a queue poll. The
+ most recently returned browser is leased first. A browser is recycled (stopped and replaced by a new
+ one in background) when it dies, when its connection is closed, when it fails periodic health check,
+ or when it is returned after reaching max uses or max memory.</p>
+ <p>Pool does not reset browser state between leases, callers should close targets they created.</p>
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class BrowserPool implements Closeable {
+    /**Default timeout of browser startup in millisecond.*/
+    private static final long DefaultStartupTimeout = 30_000;
+
+    private final List<String> _command;
+    private final int _size;
+    /**Executor shared by all connections, null to create one for each connection.*/
+    @Nullable private final ExecutorService _ioExecutor;
+    /**Thread pool for launching and stopping browsers and health checking.*/
+    private final ScheduledExecutorService _scheduler;
+    /**Idle browsers, most recently returned first.*/
+    private final LinkedBlockingDeque<BrowserProcess> _idle = new LinkedBlockingDeque<>();
+    /**All running browsers, idle or leased.*/
+    private final Set<BrowserProcess> _browsers = ConcurrentHashMap.newKeySet();
+    /**Count of running and launching browsers.*/
+    private final AtomicInteger _count = new AtomicInteger();
+    private final AtomicLong _launchCount = new AtomicLong();
+    private final AtomicLong _recycleCount = new AtomicLong();
+    private final AtomicBoolean _started = new AtomicBoolean(false);
+    private volatile boolean _closed = false;
+
+    private volatile int _maxUses = 0;
+    private volatile long _maxMemory = 0;
+    private volatile long _startupTimeout = DefaultStartupTimeout;
+    private volatile long _healthCheckInterval = 0;
+    private volatile long _healthCheckTimeout = 5_000;
+
+    /**Create a pool, browsers are launched by {@link #start()}.
+     @param command browser executable and its arguments, such as
+        <pre>["/usr/bin/chromium", "--headless", "--no-sandbox"]</pre>.
+     @param size count of browsers kept running.
+     @param ioExecutor executor shared by all connections. Use null to create one for each connection,
+        which is shutdown when browser is recycled.
+     @throws IllegalArgumentException if command is empty or size is not positive. */
+    public BrowserPool(List<String> command, int size, @Nullable ExecutorService ioExecutor)
+        throws IllegalArgumentException {
+        if (command.isEmpty())  throw new IllegalArgumentException("Browser command is empty");
+        if (size <= 0)          throw new IllegalArgumentException("Pool size must be positive: " + size);
+        _command = Collections.unmodifiableList(new ArrayList<>(command));
+        _size = size; _ioExecutor = ioExecutor;
+        _scheduler = Executors.newScheduledThreadPool(Math.min(size, 4), runnable -> {
+            final Thread thread = new Thread(runnable, "jcri-browser-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**Recycle browser when it is returned after given count of leases.
+     @param maxUses max count of leases, use 0 for unlimited. */
+    public BrowserPool setMaxUses(int maxUses) { _maxUses = Math.max(maxUses, 0); return this; }
+
+    /**Recycle browser when it is returned with resident memory, including its child processes, larger
+     than given size. Memory is only available on Linux, and is never checked on other platforms.
+     @param maxMemory max memory in byte, use 0 for unlimited. */
+    public BrowserPool setMaxMemory(long maxMemory) { _maxMemory = Math.max(maxMemory, 0); return this; }
+
+    /**Set max time from launching browser to connected, 30 seconds by default.*/
+    public BrowserPool setStartupTimeout(long timeout, TimeUnit unit) {
+        _startupTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**Periodically send <pre>Browser.getVersion</pre> to idle browsers, and recycle those which do not
+     reply in time. Pool is also refilled if a previous launch failed. Disabled by default.
+     Takes effect when {@link #start()} is called.
+     @param interval interval between checks, use 0 to disable.
+     @param timeout timeout of waiting browser's reply. */
+    public BrowserPool setHealthCheck(long interval, long timeout, TimeUnit unit) {
+        _healthCheckInterval = unit.toMillis(interval); _healthCheckTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**Get count of browsers kept running.*/
+    public int getSize() { return _size; }
+    /**Get count of idle browsers which can be leased immediately.*/
+    public int getIdleCount() { return _idle.size(); }
+    /**Get count of launched browsers, including failed ones.*/
+    public long getLaunchCount() { return _launchCount.get(); }
+    /**Get count of recycled browsers.*/
+    public long getRecycleCount() { return _recycleCount.get(); }
+    /**Get if pool is closed.*/
+    public boolean isClosed() { return _closed; }
+
+    /**Launch all browsers in parallel and wait until they are connected.
+     @return this pool.
+     @throws IOException if any browser fails to start, all browsers are stopped then.
+     @throws InterruptedException if interrupted while waiting, pool is closed and all browsers are
+        stopped then, and interrupt status of calling thread is kept.
+     @throws IllegalStateException if pool is already started or closed. */
+    public BrowserPool start() throws IOException, InterruptedException, IllegalStateException {
+        if (_closed || !_started.compareAndSet(false, true))
+            throw new IllegalStateException("Pool is already started or closed");
+        final List<Future<?>> launches = new ArrayList<>(_size);
+        for (int i = 0; i < _size; ++i) {
+            _count.incrementAndGet();
+            launches.add(_scheduler.submit(() -> { launch(); return null; }));
+        }
+        try {
+            for (Future<?> launch : launches)   launch.get();
+        }
+        catch (ExecutionException e) {
+            close();
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            //! Launches already submitted would keep spawning browsers that nobody leases or stops
+            close();
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        final long interval = _healthCheckInterval;
+        if (interval > 0)
+            _scheduler.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**Lease an idle browser, waiting if all browsers are leased.
+     Browsers that died while idle are recycled and skipped.
+     @param timeout max time to wait.
+     @return lease which must be closed to return browser to pool.
+     @throws TimeoutException if no browser is available in time.
+     @throws IllegalStateException if pool is not started or is closed. */
+    public Lease lease(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!_started.get())    throw new IllegalStateException("Pool is not started");
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (_closed)    throw new IllegalStateException("Pool is closed");
+            final BrowserProcess browser = _idle.pollFirst(
+                Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            if (browser == null) {
+                refill();
+                throw new TimeoutException("No browser is available in " + timeout + " " + unit);
+            }
+            if (browser.isAlive()) {
+                browser.onLeased();
+                return new Lease(browser);
+            }
+            recycle(browser);
+        }
+    }
+
+    /**Stop all browsers, including leased ones.*/
+    @Override public void close() {
+        _closed = true;
+        _scheduler.shutdownNow();
+        _idle.clear();
+        for (BrowserProcess browser : _browsers)    browser.close();
+        _browsers.clear();
+    }
+
+    /**Launch a browser and make it idle. Count of browsers must be increased before calling this.
+     @throws IOException if fail to launch, count of browsers is decreased then. */
+    private void launch() throws IOException, InterruptedException {
+        _launchCount.incrementAndGet();
+        BrowserProcess browser = null;
+        try {
+            browser = BrowserProcess.launch(_command);
+            _browsers.add(browser);
+            browser.connect(_startupTimeout, TimeUnit.MILLISECONDS, _ioExecutor);
+        }
+        catch (IOException | InterruptedException | RuntimeException e) {
+            _count.decrementAndGet();
+            if (browser != null) {
+                _browsers.remove(browser);
+                browser.close();
+            }
+            throw e;
+        }
+        if (_closed) {
+            _browsers.remove(browser);
+            browser.close();
+            return;
+        }
+        _idle.offerLast(browser);
+    }
+
+    /**Launch browsers in background until count of browsers reaches pool size.*/
+    private void refill() {
+        while (!_closed) {
+            final int count = _count.get();
+            if (count >= _size)     return;
+            if (!_count.compareAndSet(count, count + 1))    continue;
+            try {
+                _scheduler.execute(() -> {
+                    try { launch(); }
+                    catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            catch (RuntimeException e) {    // RejectedExecutionException if closed
+                _count.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**Stop browser in background and launch a new one.*/
+    private void recycle(BrowserProcess browser) {
+        if (!_browsers.remove(browser))     return;
+        _recycleCount.incrementAndGet();
+        _count.decrementAndGet();
+        try { _scheduler.execute(browser::close); }
+        catch (RuntimeException e) {    // RejectedExecutionException if closed
+            browser.close();
+            return;
+        }
+        refill();
+    }
+
+    /**Return leased browser to pool, or recycle it if it reaches limits.*/
+    private void release(BrowserProcess browser, boolean invalid) {
+        if (_closed) {
+            if (_browsers.remove(browser))  browser.close();
+            return;
+        }
+        final int maxUses = _maxUses;
+        final long maxMemory = _maxMemory;
+        if (invalid || !browser.isAlive() || (maxUses > 0 && browser.getUseCount() >= maxUses)
+            || (maxMemory > 0 && browser.getResidentMemory() > maxMemory))
+            recycle(browser);
+        else
+            _idle.offerFirst(browser);
+    }
+
+    /**Ping each idle browser, recycle those which do not reply, and refill pool.*/
+    private void checkHealth() {
+        final long timeout = _healthCheckTimeout;
+        for (BrowserProcess browser : _idle.toArray(new BrowserProcess[0])) {
+            //! Browser leased meanwhile is checked by its lease
+            if (!_idle.remove(browser))     continue;
+            boolean healthy = browser.isAlive();
+            if (healthy) {
+                try {
+                    healthy = browser.getConnection()
+                        .send("Browser.getVersion", "{}", EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)))
+                        .get(timeout, TimeUnit.MILLISECONDS).isSuccess();
+                }
+                catch (InterruptedException e) {
+                    _idle.offerLast(browser);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                catch (ExecutionException | TimeoutException e) {
+                    healthy = false;
+                }
+            }
+            if (healthy && !_closed)    _idle.offerLast(browser);
+            else                        release(browser, true);
+        }
+        refill();
+    }
+
+    /**Leased browser. Close it to return browser to pool.*/
+    public final class Lease implements Closeable {
+        private final BrowserProcess _browser;
+        private final AtomicBoolean _released = new AtomicBoolean(false);
+
+        private Lease(BrowserProcess browser) { _browser = browser; }
+
+        /**Get connection to browser level debugger url.
+         Do not close it, browser is recycled if connection is closed. */
+        public JCRI getConnection() { return _browser.getConnection(); }
+
+        /**Get browser level debugger url, such as
+         <pre>"ws://127.0.0.1:PORT/devtools/browser/ID"</pre>.*/
+        public URI getDebuggerUrl() {
+            final URI url = _browser.getDebuggerUrl();
+            if (url == null)    throw new IllegalStateException("Browser is not connected");
+            return url;
+        }
+
+        /**Get count of leases of this browser, including this one.*/
+        public int getUseCount() { return _browser.getUseCount(); }
+
+        /**Get resident memory of browser and its child processes.
+         @return memory in byte, or -1 if not supported on this platform. */
+        public long getResidentMemory() { return _browser.getResidentMemory(); }
+
+        /**Return browser to pool and recycle it, such as when browser is in unknown state.*/
+        public void invalidate() {
+            if (_released.compareAndSet(false, true))   release(_browser, true);
+        }
+
+        /**Return browser to pool. Calling more than once has no effect.*/
+        @Override public void close() {
+            if (_released.compareAndSet(false, true))   release(_browser, false);
+        }
+
+        @Override public String toString() { return _browser.toString(); }
+    }
+}
@@ -0,0 +1,299 @@
+package org.josh.jcri;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**A browser process launched with debugging port, and its connection to browser level debugger url.
+ The port is chosen by browser (<pre>--remote-debugging-port=0</pre>), and debugger url is discovered
+ from the line <pre>"DevTools listening on ws://..."</pre> that browser prints to standard error.
+ Each process uses its own temporary user data directory unless one is given in command, otherwise
+ browser hands over to the already running instance and exits.
+ @see BrowserPool
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class BrowserProcess {
+    /**Line printed by browser when debugging port is bound.*/
+    private static final Pattern ListeningPattern = Pattern.compile("DevTools listening on (ws://\\S+)");
+    /**Count of the last standard error lines kept for reporting startup failure.*/
+    private static final int KeptErrorLines = 8;
+    /**Null device of running platform, same as <pre>ProcessBuilder.Redirect.DISCARD</pre> of Java 9.*/
+    private static final File NullDevice = new File(
+        System.getProperty("os.name", "").startsWith("Windows") ? "NUL" : "/dev/null");
+    /**Directory of process information, only exists on Linux.*/
+    private static final File ProcDirectory = new File("/proc");
+
+    private final Process _process;
+    /**Process Id, or -1 if not available.*/
+    private final long _pid;
+    /**Temporary user data directory which is deleted when closed, null if given in command.*/
+    @Nullable private final Path _userDataDir;
+    /**Browser level debugger url, completed by standard error reading thread.*/
+    private final CompletableFuture<URI> _debuggerUrl = new CompletableFuture<>();
+    /**The last lines of standard error, guarded by itself.*/
+    private final ArrayDeque<String> _errorLines = new ArrayDeque<>(KeptErrorLines);
+    @Nullable private volatile JCRI _connection;
+    /**Count of leases, only changed by leasing thread.*/
+    private volatile int _useCount = 0;
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+
+    private BrowserProcess(Process process, @Nullable Path userDataDir) {
+        _process = process; _pid = pidOf(process); _userDataDir = userDataDir;
+        final Thread reader = new Thread(this::readError, "jcri-browser-stderr");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**Start browser process with debugging port chosen by browser.
+     @param command browser executable and its arguments, <pre>--remote-debugging-port=0</pre> and
+        <pre>--user-data-dir</pre> are appended if not given.
+     @throws IOException if fail to start process. */
+    static BrowserProcess launch(List<String> command) throws IOException {
+        final List<String> arguments = new ArrayList<>(command);
+        Path userDataDir = null;
+        if (!hasOption(command, "--remote-debugging-port"))     arguments.add("--remote-debugging-port=0");
+        if (!hasOption(command, "--user-data-dir")) {
+            userDataDir = Files.createTempDirectory("jcri-browser");
+            arguments.add("--user-data-dir=" + userDataDir);
+        }
+        final Process process;
+        try {
+            process = new ProcessBuilder(arguments)
+                .redirectOutput(ProcessBuilder.Redirect.to(NullDevice))
+                .start();
+        }
+        catch (IOException e) {
+            if (userDataDir != null)    deleteDirectory(userDataDir);
+            throw e;
+        }
+        return new BrowserProcess(process, userDataDir);
+    }
+
+    /**Wait browser reporting its debugger url, then connect to it.
+     @param ioExecutor executor of connection, null to create one for it.
+     @throws IOException if browser exits or fails to connect in time. */
+    void connect(long timeout, TimeUnit unit, @Nullable ExecutorService ioExecutor)
+        throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final URI url;
+        final JCRI connection;
+        try {
+            url = _debuggerUrl.get(timeout, unit);
+            connection = new JCRI(url, ioExecutor);
+            connection.shutdownExecutorWhenClose(ioExecutor == null);
+            _connection = connection;
+            if (!connection.connect().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS))
+                throw new IOException("Fail to connect to browser " + url);
+        }
+        catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+        }
+        catch (TimeoutException e) {
+            throw new IOException("Browser is not ready in " + timeout + " " + unit + describeError(), e);
+        }
+    }
+
+    /**Get connection to browser level debugger url.
+     @throws IllegalStateException if not connected yet. */
+    JCRI getConnection() throws IllegalStateException {
+        final JCRI connection = _connection;
+        if (connection == null)     throw new IllegalStateException("Browser is not connected");
+        return connection;
+    }
+
+    /**Get browser level debugger url, or null if not reported yet.*/
+    @Nullable URI getDebuggerUrl() { return _debuggerUrl.getNow(null); }
+    /**Get count of leases including current one.*/
+    int getUseCount() { return _useCount; }
+    /**Increase count of leases.*/
+    void onLeased() { ++_useCount; }
+
+    /**Get if process is running and connection is opened. This does not talk to browser.*/
+    boolean isAlive() {
+        final JCRI connection = _connection;
+        return _process.isAlive() && connection != null && connection.isConnected();
+    }
+
+    /**Get resident memory of browser process and all its child processes, such as renderers.
+     @return memory in byte, or -1 if not supported on this platform. */
+    long getResidentMemory() {
+        if (_pid < 0 || !ProcDirectory.isDirectory())   return -1;
+        final File[] entries = ProcDirectory.listFiles();
+        if (entries == null)    return -1;
+        //! Build process tree from parent Id in /proc/<pid>/stat
+        final Map<Long, List<Long>> children = new HashMap<>();
+        for (File entry : entries) {
+            final long pid;
+            try { pid = Long.parseLong(entry.getName()); }
+            catch (NumberFormatException e) { continue; }
+            final String stat = readProcFile(new File(entry, "stat"));
+            if (stat == null)   continue;
+            //! Fields after command name: state ppid ...
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ", 3);
+            if (fields.length < 2)  continue;
+            try { children.computeIfAbsent(Long.parseLong(fields[1]), k -> new ArrayList<>()).add(pid); }
+            catch (NumberFormatException e) {
+                // Do nothing, skip malformed entry
+            }
+        }
+        long total = 0;
+        final ArrayDeque<Long> pending = new ArrayDeque<>();
+        pending.add(_pid);
+        while (!pending.isEmpty()) {
+            final long pid = pending.poll();
+            total += residentMemoryOf(pid);
+            final List<Long> list = children.get(pid);
+            if (list != null)   pending.addAll(list);
+        }
+        return total;
+    }
+
+    /**Close connection, stop browser, and delete temporary user data directory.
+     Calling more than once has no effect.
+     @apiNote this is a blocking operation. */
+    void close() {
+        if (!_closed.compareAndSet(false, true))    return;
+        final JCRI connection = _connection;
+        if (connection != null)     connection.close();
+        _process.destroy();
+        try {
+            if (!_process.waitFor(5, TimeUnit.SECONDS)) {
+                _process.destroyForcibly();
+                _process.waitFor(5, TimeUnit.SECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            _process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        if (_userDataDir != null)   deleteDirectory(_userDataDir);
+    }
+
+    @Override public String toString() {
+        return "Browser(pid=" + _pid + ", url=" + getDebuggerUrl() + ", uses=" + _useCount + ")";
+    }
+
+    /**Read standard error until browser exits, so that browser never blocks on a full pipe.*/
+    private void readError() {
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(_process.getErrorStream(), StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (_debuggerUrl.isDone())  continue;
+                final Matcher matcher = ListeningPattern.matcher(line);
+                if (matcher.find())
+                    _debuggerUrl.complete(new URI(matcher.group(1)));
+                else synchronized (_errorLines) {
+                    if (_errorLines.size() == KeptErrorLines)   _errorLines.poll();
+                    _errorLines.add(line);
+                }
+            }
+        }
+        catch (IOException | URISyntaxException e) {
+            _debuggerUrl.completeExceptionally(e);
+        }
+        _debuggerUrl.completeExceptionally(new IOException("Browser exited before listening" + describeError()));
+    }
+
+    /**Describe the last standard error lines for exception message.*/
+    private String describeError() {
+        synchronized (_errorLines) {
+            return _errorLines.isEmpty() ? "" : ", standard error:\n" + String.join("\n", _errorLines);
+        }
+    }
+
+    /**Get if an option, with or without value, is given in command.*/
+    private static boolean hasOption(List<String> command, String option) {
+        for (String argument : command) {
+            if (argument.equals(option) || argument.startsWith(option + "="))   return true;
+        }
+        return false;
+    }
+
+    /**Get process Id without depending on Java 9 API.
+     @return -1 if not available. */
+    private static long pidOf(Process process) {
+        try { return (Long)Process.class.getMethod("pid").invoke(process); }     // Java 9+
+        catch (ReflectiveOperationException | RuntimeException e) {
+            // Do nothing, try implementation field of Java 8
+        }
+        try {
+            final Field field = process.getClass().getDeclaredField("pid");
+            field.setAccessible(true);
+            return field.getLong(process);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**Get resident memory of a single process from <pre>VmRSS</pre> of <pre>/proc/pid/status</pre>.
+     @return memory in byte, or 0 if process exited. */
+    private static long residentMemoryOf(long pid) {
+        final String status = readProcFile(new File(ProcDirectory, pid + "/status"));
+        if (status == null)     return 0;
+        final int start = status.indexOf("VmRSS:");
+        if (start < 0)  return 0;   // Kernel thread or zombie
+        final int end = status.indexOf('\n', start);
+        final String value = status.substring(start + 6, end < 0 ? status.length() : end).trim();
+        try { return Long.parseLong(value.substring(0, value.indexOf(' '))) * 1024; }
+        catch (RuntimeException e) {    // also include NumberFormatException
+            return 0;
+        }
+    }
+
+    /**Read a small file in /proc, or null if process exited.*/
+    @Nullable private static String readProcFile(File file) {
+        try { return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8); }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**Delete directory recursively, failure is only reported.*/
+    private static void deleteDirectory(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    if (e != null)  throw e;
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
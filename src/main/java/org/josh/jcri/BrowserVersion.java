@@ -0,0 +1,41 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**Browser's version information replied by browser.
+ This class stores information replied by browser with request: {@code http://host:port/json/version },
+ which contains browser level debugger url for controlling browser and attaching targets.
+ @see TargetDiscovery#getVersion(String, int)
+ @author Joshua */
+public class BrowserVersion {
+    private final String browser;
+    private final String protocolVersion;
+    private final String userAgent;
+    private final String v8Version;
+    private final String webKitVersion;
+    private final String webSocketDebuggerUrl;
+
+    @JsonCreator public BrowserVersion(
+        @JsonProperty("Browser") String browser,
+        @JsonProperty("Protocol-Version") String protocolVersion,
+        @JsonProperty("User-Agent") String userAgent,
+        @JsonProperty("V8-Version") String v8Version,
+        @JsonProperty("WebKit-Version") String webKitVersion,
+        @JsonProperty("webSocketDebuggerUrl") String webSocketDebuggerUrl
+    ) {
+        this.browser = browser;
+        this.protocolVersion = protocolVersion;
+        this.userAgent = userAgent;
+        this.v8Version = v8Version;
+        this.webKitVersion = webKitVersion;
+        this.webSocketDebuggerUrl = webSocketDebuggerUrl;
+    }
+
+    public final String getBrowser() { return browser; }
+    public final String getProtocolVersion() { return protocolVersion; }
+    public final String getUserAgent() { return userAgent; }
+    public final String getV8Version() { return v8Version; }
+    public final String getWebKitVersion() { return webKitVersion; }
+    public final String getWebSocketDebuggerUrl() { return webSocketDebuggerUrl; }
+}
@@ -0,0 +1,162 @@
+package org.josh.jcri;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**A set of independent protocol methods which are sent to browser together.
+ Methods are added by domain method classes through {@link MethodBase#call(CommandBatch, Class, Function)},
+ and are all checked when added. {@link #send()} registers all methods in waiting queue at once,
+ and writes all commands to transport in a single send pass. Each method uses connection's default
+ timeout.
+ <p>A batch can only be sent once. Futures of methods in a batch that is never sent are never
+ completed.</p>
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class CommandBatch {
+    private final EventCenter _evt;
+    private final Transport _transport;
+    /**Methods in adding order.*/
+    private final List<Item<?>> _items = new ArrayList<>();
+    private boolean _sent = false;
+
+    CommandBatch(EventCenter eventCenter, Transport transport) {
+        _evt = eventCenter; _transport = transport;
+    }
+
+    /**Get count of methods in this batch.*/
+    public synchronized int size() { return _items.size(); }
+    /**Get if this batch is already sent.*/
+    public synchronized boolean isSent() { return _sent; }
+
+    /**Get event center of this batch.*/
+    final EventCenter getEventCenter() { return _evt; }
+
+    /**Add a method into batch.
+     @return future of method's result which is completed when browser replies.
+     @throws IllegalStateException if batch is already sent. */
+    final synchronized <T extends ResultBase> CompletableFuture<T> add(
+        MethodBase method, Class<T> resultMetaClass, Function<String, T> failResultFactory
+    ) throws IllegalStateException {
+        if (_sent)  throw new IllegalStateException("Batch is already sent");
+        final Item<T> item = new Item<>(method, new PendingMethod<>(
+            _evt, _evt.getNextMethodId(), resultMetaClass, failResultFactory), failResultFactory);
+        _items.add(item);
+        return item.pending;
+    }
+
+    /**Register and send all methods in this batch.
+     @return future which is completed when all methods are replied (or failed). Results are in adding
+        order, and each result is success or failure result of corresponding method. Methods that fail
+        without browser's reply (such as connection lost) are represented by failure result contains
+        exception message. The returned future itself never completes exceptionally.
+     @throws IllegalStateException if batch is already sent. */
+    public CompletableFuture<List<ResultBase>> send() throws IllegalStateException {
+        final List<Item<?>> items;
+        synchronized (this) {
+            if (_sent)  throw new IllegalStateException("Batch is already sent");
+            _sent = true;
+            items = _items;
+        }
+        if (items.isEmpty())    return CompletableFuture.completedFuture(Collections.emptyList());
+
+        //! Serialize all commands and register all methods before sending any of them
+        //! All commands are written into one buffer owned by this thread, and each frame wraps its part
+        final Utf8JsonBuffer buffer = Utf8JsonBuffer.local();
+        final int[] offsets = new int[items.size() + 1];
+        final Item<?>[] sentItems = new Item<?>[items.size()];
+        final ResultCache cache = _evt.getResultCache();
+        int count = 0;
+        for (Item<?> item : items) {
+            //! Batched methods are never served from cache, but they can invalidate cached results
+            if (cache != null)  cache.onSending(item.method.getSessionId(), item.method.getMethodName());
+            item.pending.markSent(item.method);
+            try {
+                if (!_evt.enqueueMethod(item.pending, _evt.getDefaultTimeout(), TimeUnit.MILLISECONDS)) {
+                    item.pending.completeExceptionally(new IllegalStateException(
+                        "Command id " + String.valueOf(item.pending.getId()) + " already existed in waiting queue"));
+                    continue;
+                }
+            }
+            catch (IllegalStateException e) {   // Too many methods are waiting
+                item.pending.completeExceptionally(e);
+                continue;
+            }
+            item.method.toCommand(item.pending.getId(), buffer);
+            sentItems[count] = item;
+            offsets[++count] = buffer.length();
+        }
+        final List<ByteBuffer> commands = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final ByteBuffer command = buffer.toByteBuffer(offsets[i]);
+            command.limit(offsets[i + 1]);
+            commands.add(command);
+        }
+        try {
+            _transport.sendText(commands);
+            onSent(sentItems, count, buffer, offsets);
+            for (int i = 0; i < count; ++i)     _evt.trackDomainMethod(sentItems[i].method);
+        }
+        catch (RuntimeException e) {    // e.g. WebsocketNotConnectedException
+            for (Item<?> item : items) {
+                _evt.popMethod(item.pending.getId());
+                item.pending.completeExceptionally(e);
+            }
+        }
+
+        //! Aggregate results
+        final CompletableFuture<?>[] results = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < results.length; ++i)
+            results[i] = items.get(i).result();
+        return CompletableFuture.allOf(results).thenApply(ignored -> {
+            final List<ResultBase> list = new ArrayList<>(results.length);
+            for (CompletableFuture<?> result : results)
+                list.add((ResultBase)result.join());
+            return list;
+        });
+    }
+
+    /**Record metrics, tracing events, wire frames, and traffic log of sent commands.
+     @param items sent items.
+     @param count count of sent items.
+     @param buffer buffer contains all commands.
+     @param offsets start offset of each command in buffer, and end offset of the last command. */
+    private void onSent(Item<?>[] items, int count, Utf8JsonBuffer buffer, int[] offsets) {
+        _evt.getMetrics().onSent(count, buffer.length());
+        final WireRecorder recorder = _evt.getWireRecorder();
+        final TrafficLog log = _evt.getTrafficLog();
+        for (int i = 0; i < count; ++i) {
+            final int length = offsets[i + 1] - offsets[i];
+            Tracing.commandSent(items[i].pending.getId(), items[i].method.getMethodName(),
+                items[i].method.getSessionId(), length);
+            if (recorder != null)   recorder.onSent(buffer.array(), offsets[i], length);
+            if (log != null)    log.onSent(items[i].method.getSessionId(), buffer.array(), offsets[i], length);
+        }
+    }
+
+    /**Single method in batch.*/
+    private static final class Item<T extends ResultBase> {
+        private final MethodBase method;
+        private final PendingMethod<T> pending;
+        private final Function<String, T> failResultFactory;
+
+        private Item(MethodBase method, PendingMethod<T> pending, Function<String, T> failResultFactory) {
+            this.method = method; this.pending = pending; this.failResultFactory = failResultFactory;
+        }
+
+        /**Get future of result which converts exception into failure result.*/
+        private CompletableFuture<T> result() {
+            return pending.handle((result, e) -> {
+                if (e == null)  return result;
+                final T failed = failResultFactory.apply(String.valueOf(e.getMessage()));
+                failed.setId(pending.getId());
+                return failed;
+            });
+        }
+    }
+}
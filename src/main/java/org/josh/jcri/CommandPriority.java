@@ -0,0 +1,15 @@
+package org.josh.jcri;
+
+/**Priority class of commands queued in {@link CommandScheduler}.
+ Commands of a higher class are always sent before queued commands of lower classes, and commands of
+ the same class are sent in calling order.
+ @author Joshua */
+public enum CommandPriority {
+    /**Sent immediately, never limited by rate or in-flight window, such as navigation or evaluation
+     that a user is waiting for. */
+    CRITICAL,
+    /**Default class, limited by rate and in-flight window.*/
+    NORMAL,
+    /**Only sent when no normal command is queued, such as synthetic mouse moves or bulk queries.*/
+    BULK
+}
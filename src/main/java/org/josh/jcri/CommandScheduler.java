@@ -0,0 +1,251 @@
+package org.josh.jcri;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Scheduler of outbound commands between methods and transport of a connection.
+ Commands are queued by {@link CommandPriority} and sent when allowed:
+ <ul>
+ <li>{@link CommandPriority#CRITICAL} commands are sent immediately, ahead of all queued commands.</li>
+ <li>Other commands are sent only if count of commands waiting browser's reply is less than in-flight
+    window, and a token of rate limiting bucket is available. {@link CommandPriority#NORMAL} commands
+    are always sent before {@link CommandPriority#BULK} ones.</li>
+ <li>A queued command which is superseded by a newer command of the same coalescing rule and session
+    is dropped before it is sent, if no other command of the same class is queued between them, so
+    that order of input events is kept. The dropped command's future is completed with the result of
+    the newer command.</li>
+ </ul>
+ <p>Time waiting in queue is counted in method's timeout. Commands in {@link CommandBatch} and commands
+ sent again after reconnected bypass the scheduler. Queued commands are discarded when connection is
+ lost, their methods are failed or sent again after reconnected as other waiting methods.</p>
+ @see JCRI#setCommandScheduler(CommandScheduler)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class CommandScheduler {
+    /**Timer for sending commands when tokens are refilled, shared by all schedulers.*/
+    private static final ScheduledExecutorService Timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "jcri-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final CommandPriority[] Priorities = CommandPriority.values();
+
+    private final int _maxInFlight;
+    /**Refilled tokens per nanosecond, or 0 if rate is unlimited.*/
+    private final double _tokensPerNano;
+    /**Capacity of token bucket.*/
+    private final double _burst;
+    /**Priority of methods by name, or by <pre>"Domain.*"</pre>.*/
+    private final Map<String, CommandPriority> _priorities = new ConcurrentHashMap<>();
+    /**Coalescing rules of methods by name, predicate of serialized parameters.*/
+    private final Map<String, Predicate<String>> _coalescing = new ConcurrentHashMap<>();
+
+    //! Following fields are guarded by this scheduler
+    /**Queued commands of each priority class.*/
+    private final ArrayDeque<Command>[] _queues;
+    private int _inFlight = 0;
+    private double _tokens;
+    private long _refilledNanos = System.nanoTime();
+    /**Whether a thread is sending queued commands.*/
+    private boolean _draining = false;
+    /**Whether a timer task is scheduled for waiting tokens.*/
+    private boolean _timerScheduled = false;
+    private long _sentCount = 0;
+    private long _coalescedCount = 0;
+
+    /**Create scheduler without priority and coalescing rule.
+     @param maxInFlight max count of non-critical commands waiting browser's reply.
+     @param commandsPerSecond rate of sending non-critical commands, use 0 for unlimited rate.
+     @param burst max count of non-critical commands sent at once after idle.
+     @throws IllegalArgumentException if window or burst is not positive, or rate is negative. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CommandScheduler(int maxInFlight, double commandsPerSecond, int burst) throws IllegalArgumentException {
+        if (maxInFlight <= 0)   throw new IllegalArgumentException("In-flight window must be positive: " + maxInFlight);
+        if (burst <= 0)         throw new IllegalArgumentException("Burst must be positive: " + burst);
+        if (!(commandsPerSecond >= 0))  throw new IllegalArgumentException("Invalid rate: " + commandsPerSecond);
+        _maxInFlight = maxInFlight;
+        _tokensPerNano = commandsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        _burst = burst; _tokens = burst;
+        _queues = new ArrayDeque[Priorities.length];
+        for (int i = 0; i < _queues.length; ++i)    _queues[i] = new ArrayDeque<>();
+    }
+
+    /**Set priority class of a method.
+     @param method method name such as <pre>"Input.dispatchMouseEvent"</pre>, or <pre>"Domain.*"</pre>
+        for all methods of a domain. Methods without priority are {@link CommandPriority#NORMAL}.
+     @return this scheduler. */
+    public CommandScheduler prioritize(String method, CommandPriority priority) {
+        _priorities.put(method, priority);
+        return this;
+    }
+
+    /**Drop queued command of given method when it is superseded by a newer one.
+     @param method method name such as <pre>"Input.dispatchMouseEvent"</pre>.
+     @param params predicate of serialized parameters object which can be coalesced, such as only mouse
+        moves but not clicks.
+     @return this scheduler. */
+    public CommandScheduler coalesce(String method, Predicate<String> params) {
+        _coalescing.put(method, params);
+        return this;
+    }
+
+    /**Send synthetic input events as {@link CommandPriority#BULK} and coalesce mouse and touch moves.
+     @return this scheduler. */
+    public CommandScheduler coalesceInputMoves() {
+        return prioritize("Input.dispatchMouseEvent", CommandPriority.BULK)
+            .prioritize("Input.dispatchTouchEvent", CommandPriority.BULK)
+            .coalesce("Input.dispatchMouseEvent", params -> params.contains("\"type\":\"mouseMoved\""))
+            .coalesce("Input.dispatchTouchEvent", params -> params.contains("\"type\":\"touchMove\""));
+    }
+
+    /**Get max count of non-critical commands waiting browser's reply.*/
+    public int getMaxInFlight() { return _maxInFlight; }
+    /**Get count of sent non-critical commands waiting browser's reply.*/
+    public synchronized int getInFlightCount() { return _inFlight; }
+    /**Get count of queued commands of given priority class.*/
+    public synchronized int getQueuedCount(CommandPriority priority) { return _queues[priority.ordinal()].size(); }
+    /**Get count of commands sent by this scheduler.*/
+    public synchronized long getSentCount() { return _sentCount; }
+    /**Get count of commands dropped because of superseded.*/
+    public synchronized long getCoalescedCount() { return _coalescedCount; }
+
+    /**Get priority class of given method.*/
+    CommandPriority priorityOf(String method) {
+        if (_priorities.isEmpty())  return CommandPriority.NORMAL;
+        CommandPriority priority = _priorities.get(method);
+        if (priority == null)   priority = _priorities.get(method.substring(0, method.lastIndexOf('.') + 1) + '*');
+        return priority != null ? priority : CommandPriority.NORMAL;
+    }
+
+    /**Queue a registered method and send queued commands if allowed.
+     @param buffer serialized command which is copied, because buffer is reused by calling thread.
+     @param paramsStart start offset of parameters in buffer.
+     @param paramsEnd end offset of parameters in buffer, exclusive. */
+    void submit(MethodBase method, PendingMethod<?> pending, Utf8JsonBuffer buffer, int paramsStart, int paramsEnd) {
+        final String name = method.getMethodName();
+        final Predicate<String> coalescing = _coalescing.get(name);
+        String coalescingKey = null;
+        if (coalescing != null && coalescing.test(
+            new String(buffer.array(), paramsStart, paramsEnd - paramsStart, StandardCharsets.UTF_8)))
+            coalescingKey = method.getSessionId() + " " + name;
+        final Command command = new Command(method, pending,
+            Arrays.copyOf(buffer.array(), buffer.length()), priorityOf(name), coalescingKey);
+        Command superseded = null;
+        synchronized (this) {
+            final ArrayDeque<Command> queue = _queues[command.priority.ordinal()];
+            final Command last = queue.peekLast();
+            if (coalescingKey != null && last != null && coalescingKey.equals(last.coalescingKey)) {
+                superseded = queue.pollLast();
+                ++_coalescedCount;
+            }
+            queue.addLast(command);
+        }
+        if (superseded != null)     superseded.pending.supersede(pending);
+        drain();
+    }
+
+    /**Send queued commands until queues are empty or limits are reached.
+     Commands are sent while holding this scheduler, so they are written in scheduling order, and
+     reentrant calls by commands completed while sending return immediately. */
+    private void drain() {
+        synchronized (this) {
+            if (_draining)  return;
+            _draining = true;
+            try {
+                while (true) {
+                    final Command command = next();
+                    if (command == null)    break;
+                    //! Expired or cancelled while queued, or taken out of waiting table when connection is lost
+                    if (command.pending.isDone() || !command.pending.isWaiting())   continue;
+                    ++_sentCount;
+                    //! Critical commands are never limited, so they take no slot of in-flight window
+                    if (command.priority != CommandPriority.CRITICAL) {
+                        ++_inFlight;
+                        command.pending.whenComplete((result, e) -> onCompleted());
+                    }
+                    command.method.sendNow(command.pending, command.bytes, command.bytes.length);
+                }
+            }
+            finally {
+                _draining = false;
+            }
+        }
+    }
+
+    /**Discard all queued commands when connection is lost. Their methods are still in waiting table,
+     which is drained by connection then, so they are failed or sent again after reconnected but never
+     sent by this scheduler.
+     @return count of discarded commands. */
+    synchronized int discardQueued() {
+        int count = 0;
+        for (ArrayDeque<Command> queue : _queues) {
+            count += queue.size();
+            queue.clear();
+        }
+        return count;
+    }
+
+    /**Take the next command which can be sent now, and schedule a timer if waiting tokens.
+     @return null if nothing can be sent. */
+    @Nullable private Command next() {
+        final Command critical = _queues[CommandPriority.CRITICAL.ordinal()].pollFirst();
+        if (critical != null)   return critical;
+        if (_inFlight >= _maxInFlight)  return null;
+        ArrayDeque<Command> queue = null;
+        for (int i = CommandPriority.CRITICAL.ordinal() + 1; i < _queues.length && queue == null; ++i)
+            if (!_queues[i].isEmpty())  queue = _queues[i];
+        if (queue == null)  return null;
+        if (_tokensPerNano > 0) {
+            final long now = System.nanoTime();
+            _tokens = Math.min(_burst, _tokens + (now - _refilledNanos) * _tokensPerNano);
+            _refilledNanos = now;
+            if (_tokens < 1) {
+                if (!_timerScheduled) {
+                    _timerScheduled = true;
+                    Timer.schedule(this::onTimer, (long)Math.ceil((1 - _tokens) / _tokensPerNano), TimeUnit.NANOSECONDS);
+                }
+                return null;
+            }
+            _tokens -= 1;
+        }
+        return queue.pollFirst();
+    }
+
+    /**When tokens are refilled.*/
+    private void onTimer() {
+        synchronized (this) { _timerScheduled = false; }
+        drain();
+    }
+
+    /**When a sent command is replied, failed, or cancelled.*/
+    private void onCompleted() {
+        synchronized (this) { --_inFlight; }
+        drain();
+    }
+
+    /**Queued command.*/
+    private static final class Command {
+        private final MethodBase method;
+        private final PendingMethod<?> pending;
+        private final byte[] bytes;
+        private final CommandPriority priority;
+        /**Session and method name if this command can be superseded, otherwise null.*/
+        @Nullable private final String coalescingKey;
+
+        private Command(MethodBase method, PendingMethod<?> pending, byte[] bytes, CommandPriority priority,
+            @Nullable String coalescingKey
+        ) {
+            this.method = method; this.pending = pending; this.bytes = bytes;
+            this.priority = priority; this.coalescingKey = coalescingKey;
+        }
+    }
+}
@@ -4,7 +4,10 @@ package org.josh.jcri;
  <p>All method's parameter classes and types in every domain are required to implement this interface.
  </p>
  <ol><li>{@link #check()}: for checking if user given parameters are all valid.</li>
- <li>{@link #toJson(StringBuilder)}: convert the parameter object into json string.</li></ol>
+ <li>{@link #toJson(StringBuilder)}: convert the parameter object into json string.</li>
+ <li>{@link #toJson(Utf8JsonBuffer)}: write the parameter object as UTF-8 json bytes. Default
+ implementation converts result of {@link #toJson(StringBuilder)}, override it to write bytes
+ directly.</li></ol>
  @author Joshua */
 interface CommonDomainType {
     /**Check if parameter fields of method are all valid.
@@ -13,4 +16,9 @@ interface CommonDomainType {
     /**Convert method parameter object into json string and append into string builder.
      @return string builder instance that is given in parameter (for chaining coding style use.) */
     StringBuilder toJson(StringBuilder strBuilder);
+    /**Convert method parameter object into UTF-8 encoded json and append into byte buffer.
+     @return byte buffer instance that is given in parameter (for chaining coding style use.) */
+    default Utf8JsonBuffer toJson(Utf8JsonBuffer buffer) {
+        return buffer.appendUtf8(toJson(Utf8JsonBuffer.localStringBuilder()));
+    }
 }
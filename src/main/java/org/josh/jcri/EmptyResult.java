@@ -0,0 +1,11 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**Result of methods whose returned data is not used.
+ @author Joshua */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class EmptyResult extends ResultBase {
+    EmptyResult() { }
+    EmptyResult(FailedResult failedResult) { super(failedResult); }
+}
@@ -1,17 +1,30 @@
 package org.josh.jcri;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -23,19 +36,72 @@ class EventCenter {
     private static final String DefaultIOThreadPropertyName = "org.josh.jcri.defaultIOThread";
     /**Default IO thread count value.*/
     private static final int DefaultIOThread = 1;
+    /**System property name of default {@link ExecutionMode}.*/
+    private static final String ExecutionModePropertyName = "org.josh.jcri.executionMode";
+    /**System property name of default method timeout in millisecond.*/
+    private static final String DefaultMethodTimeoutPropertyName = "org.josh.jcri.methodTimeout";
+    /**Default method timeout millisecond value.*/
+    private static final long DefaultMethodTimeout = 30000;
+    /**System property name of max count of methods waiting browser's reply.*/
+    private static final String MaxPendingMethodPropertyName = "org.josh.jcri.maxPendingMethod";
+    /**Default max count of methods waiting browser's reply.*/
+    private static final int DefaultMaxPendingMethod = 1 << 20;
+    /**System property name of count of raw frames kept by {@link WireRecorder}, 0 to disable.*/
+    private static final String WireRecorderCapacityPropertyName = "org.josh.jcri.wireRecorderCapacity";
+    /**Leading characters of event frame, browser always puts method name first in events.*/
+    private static final String EventPrefix = "{\"method\":\"";
+    /**Trailing field name of a message of attached target in flattened mode.*/
+    private static final String SessionIdField = ",\"sessionId\":\"";
+    /**Initial size of waiting table.*/
+    private static final int InitialPendingMethod = 1024;
     /**Standalone json object mapper.*/
     private static final ObjectMapper _om = new ObjectMapper();
+    /**Object readers cached per result type, so binding never looks up deserializer again.*/
+    private static final ClassValue<ObjectReader> _readers = new ClassValue<ObjectReader>() {
+        @Override protected ObjectReader computeValue(Class<?> type) { return _om.readerFor(type); }
+    };
 
     /**Next command Id.*/
     private final AtomicLong _nextMethodId = new AtomicLong(0);
     /**Stores all protocol methods that are waiting browser response.*/
-    private final Map<Long, MethodBase> _methodWaitingTable = new ConcurrentHashMap<>();
-    /**Executor for waiting browser's response of sent commends.*/
+    private final PendingTable _methodWaitingTable;
+    /**Executor for connecting and other IO tasks.*/
     private final ExecutorService _ioExecutor;
+    /**Threading mode of executor.*/
+    private final ExecutionMode _executionMode;
+    /**Default method timeout in millisecond, 0 or negative means never timeout.*/
+    private volatile long _defaultTimeout = DefaultMethodTimeout;
+    /**Event listeners registry.*/
+    private final EventRegistry _events;
+    /**Attached target sessions keyed by session Id.*/
+    private final ConcurrentMap<String, TargetSession> _sessions = new ConcurrentHashMap<>();
+    /**Latency and throughput metrics.*/
+    private final Metrics _metrics = new Metrics(this);
+    /**Methods which enable a domain of the connected target keyed by domain name, in enabling order.
+     Guarded by itself.*/
+    private final Map<String, MethodBase> _enabledDomains = new LinkedHashMap<>();
+    /**Recorder of raw frames, null if disabled.*/
+    @Nullable private volatile WireRecorder _wireRecorder;
+    /**Binary log of all frames, null if disabled.*/
+    @Nullable private volatile TrafficLog _trafficLog;
+    /**Scheduler of outbound commands, null to send commands immediately.*/
+    @Nullable private volatile CommandScheduler _commandScheduler;
+    /**Cache of query methods' results, null if disabled.*/
+    @Nullable private volatile ResultCache _resultCache;
 
     /**Create new event center instance.
-     @param ioExecutor executor to create new {@link java.util.concurrent.CompletableFuture} instance.*/
+     @param ioExecutor executor to create new {@link java.util.concurrent.CompletableFuture} instance.
+        Use null to create executor of mode by system property <pre>org.josh.jcri.executionMode</pre>,
+        {@link ExecutionMode#BOUNDED_POOL} by default. Given executor is treated as a bounded pool. */
     EventCenter(@Nullable ExecutorService ioExecutor) {
+        this(ioExecutor, ioExecutor != null ? ExecutionMode.BOUNDED_POOL : defaultExecutionMode());
+    }
+
+    /**Create new event center instance.
+     @param ioExecutor executor of given mode, use null to create it.
+     @throws UnsupportedOperationException if mode is not supported by running Java. */
+    EventCenter(@Nullable ExecutorService ioExecutor, ExecutionMode mode) throws UnsupportedOperationException {
+        _executionMode = mode;
         if (ioExecutor == null) {
             int ioThread = DefaultIOThread;
             try {
@@ -45,10 +111,33 @@ class EventCenter {
             catch (IllegalArgumentException e) {  // also include NumberFormatException
                 // Do nothing, just use default value
             }
-            _ioExecutor = Executors.newFixedThreadPool(ioThread);
+            _ioExecutor = mode.newExecutor(ioThread);
         }
         else
             _ioExecutor = ioExecutor;
+        int maxPendingMethod = DefaultMaxPendingMethod;
+        try {
+            final int count = Integer.parseInt(System.getProperty(MaxPendingMethodPropertyName));
+            if (count > 0) maxPendingMethod = count;
+        }
+        catch (IllegalArgumentException e) {  // also include NumberFormatException
+            // Do nothing, just use default value
+        }
+        _methodWaitingTable = new PendingTable(InitialPendingMethod, maxPendingMethod);
+        try { _defaultTimeout = Long.parseLong(System.getProperty(DefaultMethodTimeoutPropertyName)); }
+        catch (IllegalArgumentException e) {  // also include NumberFormatException
+            // Do nothing, just use default value
+        }
+        try {
+            final int capacity = Integer.parseInt(System.getProperty(WireRecorderCapacityPropertyName));
+            if (capacity > 0) _wireRecorder = new WireRecorder(capacity);
+        }
+        catch (IllegalArgumentException e) {  // also include NumberFormatException
+            // Do nothing, just disable recorder
+        }
+        _events = new EventRegistry(_ioExecutor, ConcurrentHashMap.newKeySet());
+        _events.subscribe("Target.detachedFromTarget", DetachedFromTarget.class,
+            e -> removeSession(e.sessionId), null);
     }
 
     /**Get next unique method Id. */
@@ -57,17 +146,153 @@ class EventCenter {
     /**Get executor instance for submit new task.*/
     final ExecutorService getExecutor() { return _ioExecutor; }
 
-    /**Push a method into response waiting queue.
+    /**Get threading mode of executor.*/
+    final ExecutionMode getExecutionMode() { return _executionMode; }
+
+    /**Get execution mode by system property, falls back to {@link ExecutionMode#BOUNDED_POOL} if
+     property is invalid or mode is not supported.*/
+    private static ExecutionMode defaultExecutionMode() {
+        final String name = System.getProperty(ExecutionModePropertyName);
+        if (name == null)   return ExecutionMode.BOUNDED_POOL;
+        try {
+            final ExecutionMode mode = ExecutionMode.valueOf(name.trim().toUpperCase());
+            return mode.isSupported() ? mode : ExecutionMode.BOUNDED_POOL;
+        }
+        catch (IllegalArgumentException e) {
+            return ExecutionMode.BOUNDED_POOL;
+        }
+    }
+
+    /**Get metrics recorder.*/
+    final Metrics getMetrics() { return _metrics; }
+
+    /**Get recorder of raw frames.
+     @return null if disabled. */
+    @Nullable final WireRecorder getWireRecorder() { return _wireRecorder; }
+    /**Set recorder of raw frames, use null to disable.*/
+    final void setWireRecorder(@Nullable WireRecorder recorder) { _wireRecorder = recorder; }
+
+    /**Get binary log of all frames.
+     @return null if disabled. */
+    @Nullable final TrafficLog getTrafficLog() { return _trafficLog; }
+    /**Set binary log of all frames, use null to disable.*/
+    final void setTrafficLog(@Nullable TrafficLog log) { _trafficLog = log; }
+
+    /**Get scheduler of outbound commands.
+     @return null if commands are sent immediately. */
+    @Nullable final CommandScheduler getCommandScheduler() { return _commandScheduler; }
+    /**Set scheduler of outbound commands, use null to send commands immediately.*/
+    final void setCommandScheduler(@Nullable CommandScheduler scheduler) { _commandScheduler = scheduler; }
+
+    /**Get cache of query methods' results.
+     @return null if disabled. */
+    @Nullable final ResultCache getResultCache() { return _resultCache; }
+    /**Set cache of query methods' results, use null to disable.*/
+    final void setResultCache(@Nullable ResultCache cache) { _resultCache = cache; }
+
+    /**Get count of events queued in all listeners, including attached sessions' listeners.*/
+    final int getQueuedEventCount() {
+        int count = _events.getQueuedEventCount();
+        for (TargetSession session : _sessions.values())
+            count += session.getEventRegistry().getQueuedEventCount();
+        return count;
+    }
+
+    /**Get event listeners registry.*/
+    final EventRegistry getEventRegistry() { return _events; }
+
+    /**Add attached target session for routing its events.*/
+    final void addSession(TargetSession session) { _sessions.put(session.getSessionId(), session); }
+
+    /**Remove attached target session.
+     @return removed session, or null if not found. */
+    @Nullable final TargetSession removeSession(String sessionId) {
+        final TargetSession session = _sessions.remove(sessionId);
+        if (session != null)    session.onDetached();
+        final ResultCache cache = _resultCache;
+        if (cache != null)      cache.removeSession(sessionId);
+        return session;
+    }
+
+    /**Remove all attached target sessions, such as when connection is lost.*/
+    final void removeAllSessions() {
+        for (String sessionId : _sessions.keySet())     removeSession(sessionId);
+    }
+
+    /**Get event registry of given session.
+     @param sessionId session Id, or null for the connected target itself.
+     @return null if session is not found. */
+    @Nullable private EventRegistry registryOf(@Nullable String sessionId) {
+        if (sessionId == null)  return _events;
+        final TargetSession session = _sessions.get(sessionId);
+        return session != null ? session.getEventRegistry() : null;
+    }
+
+    /**Get default method timeout in millisecond.*/
+    final long getDefaultTimeout() { return _defaultTimeout; }
+    /**Set default method timeout in millisecond, 0 or negative means never timeout.*/
+    final void setDefaultTimeout(long timeout) { _defaultTimeout = timeout; }
+
+    /**Push a method into response waiting queue and schedule its timeout.
      If given method's Id is already existed in internal waiting queue, the given method will NOT
-     be put into queue. */
-    final boolean enqueueMethod(long commandId, MethodBase method) {
-        return _methodWaitingTable.putIfAbsent(commandId, method) == null;
+     be put into queue.
+     @param timeout max duration of waiting browser's reply. Use 0 or negative to indicate never
+        timeout.
+     @throws IllegalStateException if too many methods are waiting browser's reply. */
+    final boolean enqueueMethod(PendingMethod<?> method, long timeout, TimeUnit unit) throws IllegalStateException {
+        if (timeout > 0)    method.setDeadline(timeout, unit);
+        return enqueueMethod(method);
     }
 
+    /**Push a method into response waiting queue and schedule its timeout at its deadline already set,
+     such as sending method again after reconnected.
+     @throws IllegalStateException if too many methods are waiting browser's reply.
+     @see #enqueueMethod(PendingMethod, long, TimeUnit) */
+    final boolean enqueueMethod(PendingMethod<?> method) throws IllegalStateException {
+        if (!_methodWaitingTable.put(method))   return false;
+        if (method.isExpiring())    TimeoutWheel.get().schedule(method);
+        return true;
+    }
+
+    /**Fail all methods in waiting queue, such as when connection is closed.
+     @param cause exception set to every waiting method. */
+    final void failAllMethods(Throwable cause) {
+        drainMethods(method -> method.completeExceptionally(cause));
+    }
+
+    /**Remove all methods from waiting queue.
+     @param consumer callback of each removed method. */
+    final void drainMethods(Consumer<PendingMethod<?>> consumer) { _methodWaitingTable.drain(consumer); }
+
+    /**Remember sent <pre>Domain.enable</pre> method of the connected target, and forget it when
+     <pre>Domain.disable</pre> is sent, so that domains can be enabled again after reconnected.*/
+    final void trackDomainMethod(MethodBase method) {
+        if (method.getSessionId() != null)  return;
+        final String name = method.getMethodName();
+        final boolean enable = name.endsWith(".enable");
+        if (!enable && !name.endsWith(".disable"))  return;
+        final String domain = name.substring(0, name.lastIndexOf('.'));
+        synchronized (_enabledDomains) {
+            if (enable)     _enabledDomains.put(domain, method);
+            else            _enabledDomains.remove(domain);
+        }
+    }
+
+    /**Get methods which enabled domains of the connected target, in enabling order.*/
+    final List<MethodBase> getEnabledDomainMethods() {
+        synchronized (_enabledDomains) { return new ArrayList<>(_enabledDomains.values()); }
+    }
+
+    /**Get if given method is in waiting queue.*/
+    final boolean isMethodWaiting(PendingMethod<?> method) { return _methodWaitingTable.get(method.getId()) == method; }
+
+    /**Get count of methods waiting browser's reply.*/
+    final int getPendingMethodCount() { return _methodWaitingTable.size(); }
+
     /**Pop out method from waiting queue.
      @param id method's id
      @return method instance in waiting queue with specified id. null if id not found. */
-    final MethodBase popMethod(long id) { return _methodWaitingTable.remove(id); }
+    final PendingMethod<?> popMethod(long id) { return _methodWaitingTable.remove(id); }
 
     /**Deserialize json string to object.
      @throws IOException if given json string is invalid. */
@@ -81,10 +306,15 @@ class EventCenter {
         return reader.readValue(data);
     }
 
+    /**Get cached object reader instance which binds json to given type.*/
+    static ObjectReader readerFor(Class<?> meta) { return _readers.get(meta); }
+    /**Create object reader instance which binds json to given generic type, callers should keep it.*/
+    static ObjectReader readerFor(TypeReference<?> type) { return _om.readerFor(type); }
+
     /**Deserialize json node instance to object with a given object reader instance.
      @throws IOException if given json node is invalid. */
     static <T> T deserializeJson(JsonNode node, Class<T> meta) throws IOException {
-        return _om.treeToValue(node, meta);
+        return readerFor(meta).readValue(node);
     }
     /**Deserialize json node instance to object with a given object reader instance.
      @throws IOException if given json node is invalid. */
@@ -104,23 +334,119 @@ class EventCenter {
         return writer.writeValueAsString(object);
     }
 
-    /**On receiving message from browser callback method.*/
+    /**On receiving message from browser callback method.
+     Only envelope keys (<pre>id</pre>, <pre>method</pre>, <pre>sessionId</pre>) are parsed by streaming
+     tokens, <pre>result</pre> field is bound directly into registered result type, and <pre>params</pre>
+     field of event is bound directly into registered event type without building json tree.
+     Replied method is completed directly on the calling (socket) thread.
+     <p>Method name of event is scanned from raw text first, and event that nobody listens is dropped
+     before creating any parser.</p>*/
     void onMessage(String msg) {
-        try {
-            final JsonNode node = _om.readTree(msg);
+        _metrics.onMessage(msg.length());
+        final WireRecorder recorder = _wireRecorder;
+        if (recorder != null)   recorder.onReceived(msg);
+        final TrafficLog log = _trafficLog;
+        if (log != null)    log.onReceived(msg);
+        if (msg.startsWith(EventPrefix)) {
+            //! Method name contains no character needs escaping
+            final int end = msg.indexOf('"', EventPrefix.length());
+            if (end > 0) {
+                final String method = msg.substring(EventPrefix.length(), end);
+                if (!isWanted(method)) {
+                    _metrics.onEventDropped(method);
+                    return;
+                }
+            }
+        }
+        try (JsonParser parser = _om.getFactory().createParser(msg)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)   return;    // Browser response unexpected message?!
+            long id = 0;
+            boolean hasId = false;
+            String method = null;
+            String sessionId = null;
+            //! Result field which appears before id field
+            TokenBuffer deferredResult = null;
+            //! Params field which appears before method field
+            TokenBuffer deferredParams = null;
+            boolean eventDispatched = false;
+            JsonNode error = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                case "id":
+                    id = parser.getLongValue();
+                    hasId = true;
+                    break;
+                case "method":
+                    method = parser.getText();
+                    break;
+                case "sessionId":
+                    sessionId = parser.getText();
+                    break;
+                case "result":
+                    //! Browser always puts id first, bind result directly without copying
+                    if (hasId) {
+                        final PendingMethod<?> pending = popMethod(id);
+                        if (pending == null)    return;
+                        Tracing.replyReceived(pending, msg.length(), false);
+                        pending.setResult(parser);
+                        return;
+                    }
+                    deferredResult = new TokenBuffer(parser);
+                    deferredResult.copyCurrentStructure(parser);
+                    break;
+                case "error":
+                    error = parser.readValueAsTree();
+                    break;
+                case "params":
+                    //! Browser always puts method first and session Id last, so params is bound
+                    //! directly into registry of session scanned from the end of message
+                    if (method != null) {
+                        final String target = sessionIdOf(msg);
+                        invalidateResults(method, target);
+                        final EventRegistry registry = registryOf(target);
+                        if (registry != null)   registry.dispatch(method, parser);
+                        else                    parser.skipChildren();     // Session is already detached
+                        eventDispatched = true;
+                        break;
+                    }
+                    deferredParams = new TokenBuffer(parser);
+                    deferredParams.copyCurrentStructure(parser);
+                    break;
+                default:    // unknown fields
+                    parser.skipChildren();
+                    break;
+                }
+            }
+
             //! Check if is response of method
-            if (node.has("id")) {
-                final MethodBase method = _methodWaitingTable.get(node.get("id").asLong());
-                if (method != null) {
-                    if (node.has("result"))
-                        method.setResponse(true, node.get("result"));
-                    else
-                        method.setResponse(false, node.get("error"));
-                    method.getLatch().countDown();
+            if (hasId) {
+                final PendingMethod<?> pending = popMethod(id);
+                if (pending == null)    return;
+                Tracing.replyReceived(pending, msg.length(), deferredResult == null);
+                if (deferredResult != null) {
+                    final JsonParser resultParser = deferredResult.asParser();
+                    resultParser.nextToken();
+                    pending.setResult(resultParser);
                 }
+                else if (error != null)
+                    pending.setError(error);
+                else    //! Browser response unexpected reply?! Popped method is never expired, so fail it
+                    pending.setError("Reply has neither result nor error");
             }
-            else if (node.has("method")){
-                /// TODO: not implemented
+            else if (method != null) {
+                _metrics.onEvent(method);
+                Tracing.eventReceived(method, sessionId, msg.length());
+                if (eventDispatched)    return;
+                invalidateResults(method, sessionId);
+                final EventRegistry registry = registryOf(sessionId);
+                if (registry == null)   return;     // Session is already detached
+                //! Event without params is dispatched with empty params object
+                final JsonParser paramsParser = deferredParams != null ?
+                    deferredParams.asParser() : _om.getFactory().createParser("{}");
+                paramsParser.nextToken();
+                registry.dispatch(method, paramsParser);
             }
             else {
                 //! Browser response unexpected message?!
@@ -132,6 +458,45 @@ class EventCenter {
     }
 
 
+    /**Get session Id at the end of message, such as <pre>{...,"sessionId":"ID"}</pre>, where browser
+     puts it in flattened mode. A quote inside json string is always escaped, so the field can not be
+     part of a string value, and a session Id of nested object is followed by two braces.
+     @return null if message is not sent by an attached target. */
+    @Nullable static String sessionIdOf(String msg) {
+        final int end = msg.length() - 2;
+        if (end <= 0 || msg.charAt(end + 1) != '}' || msg.charAt(end) != '"')  return null;
+        final int field = msg.lastIndexOf(SessionIdField, end);
+        if (field < 0)  return null;
+        final int start = field + SessionIdField.length();
+        if (msg.indexOf('"', start) != end || end - start > 0xff)   return null;
+        return msg.substring(start, end);
+    }
+
+    /**Get if given event is listened in any registry, or invalidates cached results.
+     Session Id of event appears after params, so event is kept if any target listens it.*/
+    private boolean isWanted(String event) {
+        if (_events.getSubscribedMethods().contains(event)) {
+            if (_events.isSubscribed(event))    return true;
+            for (TargetSession session : _sessions.values())
+                if (session.getEventRegistry().isSubscribed(event))     return true;
+        }
+        final ResultCache cache = _resultCache;
+        return cache != null && cache.isInvalidatedBy(event);
+    }
+
+    /**Invalidate cached results by event before it is delivered to listeners.*/
+    private void invalidateResults(String event, @Nullable String sessionId) {
+        final ResultCache cache = _resultCache;
+        if (cache != null)  cache.onEvent(event, sessionId);
+    }
+
+    /**Parameters of event <pre>Target.detachedFromTarget</pre>.*/
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static final class DetachedFromTarget {
+        private final String sessionId;
+        @JsonCreator DetachedFromTarget(@JsonProperty("sessionId") String sessionId) { this.sessionId = sessionId; }
+    }
+
     /**Partial result for success method.*/
     private class PartialSuccessMethod {
 //        private final long id;
@@ -143,10 +508,5 @@ class EventCenter {
 //        private final long id;
 //        private final String error;
     }
-
-    /**Partial result for event.*/
-    private class PartialEvent {
-        ;
-    }
 }
 
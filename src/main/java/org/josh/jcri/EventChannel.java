@@ -0,0 +1,80 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Holds all {@link EventDispatcher}s of a single event method, one for each event parameters type.
+ Dispatcher array is copy-on-write, so dispatching an event never takes a lock. Event parameters are
+ bound directly from parser when only one type is listened, otherwise parameters are copied once into
+ token buffer and bound for each type.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class EventChannel {
+    /**Event method name.*/
+    private final String _method;
+    /**Dispatchers of each event parameters type.*/
+    private volatile EventDispatcher<?>[] _dispatchers = new EventDispatcher<?>[0];
+
+    EventChannel(String method) { _method = method; }
+
+    /**Get event method name.*/
+    final String getMethod() { return _method; }
+
+    /**Get dispatcher of given event parameters type, create if not existed.*/
+    @SuppressWarnings("unchecked")
+    final synchronized <E> EventDispatcher<E> dispatcherOf(Class<E> eventMetaClass) {
+        final EventDispatcher<?>[] current = _dispatchers;
+        for (EventDispatcher<?> dispatcher : current)
+            if (dispatcher.getEventMetaClass() == eventMetaClass)   return (EventDispatcher<E>)dispatcher;
+        final EventDispatcher<E> dispatcher = new EventDispatcher<>(_method, eventMetaClass);
+        final EventDispatcher<?>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = dispatcher;
+        _dispatchers = next;
+        return dispatcher;
+    }
+
+    /**Get if any listener or waiter exists.*/
+    final boolean isActive() {
+        for (EventDispatcher<?> dispatcher : _dispatchers)
+            if (dispatcher.isActive())  return true;
+        return false;
+    }
+
+    /**Get count of events queued in all listeners.*/
+    final int getQueuedEventCount() {
+        int count = 0;
+        for (EventDispatcher<?> dispatcher : _dispatchers)  count += dispatcher.getQueuedEventCount();
+        return count;
+    }
+
+    /**Bind event parameters and deliver to all listeners and waiters.
+     @param parser parser which current token is the start of <pre>params</pre> value.
+     @param executor executor for completing waiters.
+     @throws IOException if fail to bind event parameters. */
+    final void dispatch(JsonParser parser, Executor executor) throws IOException {
+        final EventDispatcher<?>[] dispatchers = _dispatchers;
+        EventDispatcher<?> single = null;
+        int activeCount = 0;
+        for (EventDispatcher<?> dispatcher : dispatchers) {
+            if (dispatcher.isActive()) { single = dispatcher; ++activeCount; }
+        }
+        if (activeCount == 0)
+            parser.skipChildren();
+        else if (activeCount == 1)
+            single.dispatch(parser, executor);
+        else {
+            final TokenBuffer params = new TokenBuffer(parser);
+            params.copyCurrentStructure(parser);
+            for (EventDispatcher<?> dispatcher : dispatchers) {
+                if (!dispatcher.isActive())     continue;
+                final JsonParser paramsParser = params.asParser();
+                paramsParser.nextToken();
+                dispatcher.dispatch(paramsParser, executor);
+            }
+        }
+    }
+}
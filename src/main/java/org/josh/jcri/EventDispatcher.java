@@ -0,0 +1,126 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Holds all listeners and one-shot waiters of a single event method which use the same event
+ parameters type.
+ Listener array is copy-on-write, so dispatching an event never takes a lock.
+ @see EventChannel
+ @param <E> type of event parameters.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class EventDispatcher<E> {
+    /**Shared empty listener array.*/
+    private static final EventSubscription<?>[] NoSubscription = new EventSubscription<?>[0];
+
+    /**Event method name.*/
+    private final String _method;
+    /**Meta class of event parameters type.*/
+    private final Class<E> _eventMetaClass;
+    /**Current listeners, replaced as a whole when listener is added or removed.*/
+    private volatile EventSubscription<E>[] _subscriptions;
+    /**One-shot waiters of next event.*/
+    private final Queue<CompletableFuture<E>> _waiters = new ConcurrentLinkedQueue<>();
+    /**Factory of destination of event's binary fields, null to decode them into byte arrays.*/
+    @Nullable private volatile Supplier<? extends BinarySink> _sinkFactory;
+
+    @SuppressWarnings("unchecked")
+    EventDispatcher(String method, Class<E> eventMetaClass) {
+        _method = method;
+        _eventMetaClass = eventMetaClass;
+        _subscriptions = (EventSubscription<E>[])NoSubscription;
+    }
+
+    /**Get event method name.*/
+    final String getMethod() { return _method; }
+    /**Get meta class of event parameters type.*/
+    final Class<E> getEventMetaClass() { return _eventMetaClass; }
+    /**Get if any listener or waiter exists.*/
+    final boolean isActive() { return _subscriptions.length != 0 || !_waiters.isEmpty(); }
+
+    /**Set factory of destination of event's {@link BinaryData} fields.
+     @param sinkFactory called once for each event. Use null to decode into byte arrays. */
+    final void setSinkFactory(@Nullable Supplier<? extends BinarySink> sinkFactory) { _sinkFactory = sinkFactory; }
+
+    /**Add a listener.
+     @see EventSubscription#EventSubscription(EventDispatcher, Consumer, Executor, int, OverflowPolicy, Function)*/
+    final synchronized EventSubscription<E> add(Consumer<? super E> listener, Executor executor,
+        int capacity, OverflowPolicy policy, @Nullable Function<? super E, ?> coalesceKey
+    ) {
+        final EventSubscription<E> subscription = new EventSubscription<>(
+            this, listener, executor, capacity, policy, coalesceKey);
+        final EventSubscription<E>[] current = _subscriptions;
+        final EventSubscription<E>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = subscription;
+        _subscriptions = next;
+        return subscription;
+    }
+
+    /**Remove a listener.*/
+    @SuppressWarnings("unchecked")
+    final synchronized void remove(EventSubscription<E> subscription) {
+        final EventSubscription<E>[] current = _subscriptions;
+        int index = -1;
+        for (int i = 0; i < current.length; ++i)
+            if (current[i] == subscription) { index = i; break; }
+        if (index < 0)  return;
+        if (current.length == 1) {
+            _subscriptions = (EventSubscription<E>[])NoSubscription;
+            return;
+        }
+        final EventSubscription<E>[] next = Arrays.copyOf(current, current.length - 1);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        _subscriptions = next;
+    }
+
+    /**Get count of events queued in all listeners.*/
+    final int getQueuedEventCount() {
+        int count = 0;
+        for (EventSubscription<E> subscription : _subscriptions)    count += subscription.getQueueSize();
+        return count;
+    }
+
+    /**Add a one-shot waiter which is completed by next event.*/
+    final CompletableFuture<E> await() {
+        final CompletableFuture<E> waiter = new CompletableFuture<>();
+        _waiters.offer(waiter);
+        //! Remove cancelled (or completed by user) waiter
+        waiter.whenComplete((e, t) -> { if (t != null) _waiters.remove(waiter); });
+        return waiter;
+    }
+
+    /**Bind event parameters and deliver to all listeners and waiters.
+     @param parser parser which current token is the start of <pre>params</pre> value.
+     @param executor executor for completing waiters.
+     @throws IOException if fail to bind event parameters. */
+    final void dispatch(JsonParser parser, Executor executor) throws IOException {
+        final EventSubscription<E>[] subscriptions = _subscriptions;
+        if (subscriptions.length == 0 && _waiters.isEmpty()) {
+            parser.skipChildren();
+            return;
+        }
+        ObjectReader reader = EventCenter.readerFor(_eventMetaClass);
+        final Supplier<? extends BinarySink> sinkFactory = _sinkFactory;
+        if (sinkFactory != null)    reader = reader.withAttribute(BinarySink.class, sinkFactory.get());
+        final E event = reader.readValue(parser);
+        for (EventSubscription<E> subscription : subscriptions)
+            subscription.offer(event);
+        CompletableFuture<E> waiter;
+        while ((waiter = _waiters.poll()) != null) {
+            final CompletableFuture<E> w = waiter;
+            executor.execute(() -> w.complete(event));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Registry of event listeners keyed by event method name.
+ Looking up dispatcher of an event is a single {@link ConcurrentHashMap#get(Object)} which never
+ locks.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class EventRegistry {
+    /**System property name of default event queue capacity of each listener.*/
+    private static final String DefaultQueueCapacityPropertyName = "org.josh.jcri.defaultEventQueueCapacity";
+    /**Default event queue capacity value.*/
+    private static final int DefaultQueueCapacity = 1024;
+    /**Default event queue capacity of each listener.*/
+    static final int QueueCapacity;
+    static {
+        int capacity = DefaultQueueCapacity;
+        try {
+            final int value = Integer.parseInt(System.getProperty(DefaultQueueCapacityPropertyName));
+            if (value > 0) capacity = value;
+        }
+        catch (IllegalArgumentException e) {  // also include NumberFormatException
+            // Do nothing, just use default value
+        }
+        QueueCapacity = capacity;
+    }
+
+    /**Event channels keyed by event method name.*/
+    private final ConcurrentMap<String, EventChannel> _channels = new ConcurrentHashMap<>();
+    /**Default executor for delivering events.*/
+    private volatile Executor _executor;
+    /**Names of events that have ever been listened in any registry of the same connection, shared by
+     registries of attached targets. Names are never removed, so an event not in it can be dropped
+     without parsing.*/
+    private final Set<String> _subscribedMethods;
+
+    /**Create registry with default event delivery executor.
+     @param subscribedMethods names of listened events, shared by all registries of a connection. */
+    EventRegistry(Executor executor, Set<String> subscribedMethods) {
+        _executor = executor; _subscribedMethods = subscribedMethods;
+    }
+
+    /**Get default executor for delivering events.*/
+    final Executor getExecutor() { return _executor; }
+    /**Set default executor for delivering events. Only affects listeners registered later.*/
+    final void setExecutor(Executor executor) { _executor = executor; }
+
+    /**Get names of events that have ever been listened in any registry of the same connection.*/
+    final Set<String> getSubscribedMethods() { return _subscribedMethods; }
+
+    /**Get dispatcher of given event and parameters type, create if not existed.*/
+    private <E> EventDispatcher<E> dispatcherOf(String method, Class<E> eventMetaClass) {
+        //! Name is added before listener, so received event is never dropped after subscribed
+        _subscribedMethods.add(method);
+        return _channels.computeIfAbsent(method, EventChannel::new).dispatcherOf(eventMetaClass);
+    }
+
+    /**Add event listener with default queue capacity and {@link OverflowPolicy#DROP_OLDEST} policy.
+     Receiving thread is never blocked by default, because a listener which waits a method reply would
+     block the very thread that reads the reply.
+     @param method event method name such as <pre>"Network.requestWillBeSent"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param listener callback of event.
+     @param executor executor to run listener. Use null for default executor. */
+    final <E> Subscription subscribe(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, @Nullable Executor executor
+    ) {
+        return subscribe(method, eventMetaClass, listener, executor, QueueCapacity, OverflowPolicy.DROP_OLDEST, null);
+    }
+
+    /**Add event listener.
+     @param method event method name such as <pre>"Network.requestWillBeSent"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param listener callback of event.
+     @param executor executor to run listener. Use null for default executor.
+     @param capacity max count of queued events of this listener.
+     @param policy behavior when queue is full.
+     @param coalesceKey coalescing key of {@link OverflowPolicy#COALESCE}. Use null to keep only the
+        latest event.
+     @throws IllegalArgumentException if capacity is not positive. */
+    final <E> Subscription subscribe(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, @Nullable Executor executor,
+        int capacity, OverflowPolicy policy, @Nullable Function<? super E, ?> coalesceKey
+    ) throws IllegalArgumentException {
+        return dispatcherOf(method, eventMetaClass).add(
+            listener, executor != null ? executor : _executor, capacity, policy, coalesceKey);
+    }
+
+    /**Set factory of destination of {@link BinaryData} fields of given event and parameters type.
+     @param sinkFactory called once for each event by the thread that receives it. Use null to decode
+        binary fields into byte arrays. */
+    final <E> void setBinarySink(
+        String method, Class<E> eventMetaClass, @Nullable Supplier<? extends BinarySink> sinkFactory
+    ) {
+        dispatcherOf(method, eventMetaClass).setSinkFactory(sinkFactory);
+    }
+
+    /**Wait next event of given method.*/
+    final <E> CompletableFuture<E> once(String method, Class<E> eventMetaClass) {
+        return dispatcherOf(method, eventMetaClass).await();
+    }
+
+    /**Get if any listener or waiter of given event exists.*/
+    final boolean isSubscribed(String method) {
+        final EventChannel channel = _channels.get(method);
+        return channel != null && channel.isActive();
+    }
+
+    /**Get count of events queued in all listeners of this registry.*/
+    final int getQueuedEventCount() {
+        int count = 0;
+        for (EventChannel channel : _channels.values())     count += channel.getQueuedEventCount();
+        return count;
+    }
+
+    /**Dispatch an event to its listeners.
+     @param method event method name.
+     @param parser parser which current token is the start of <pre>params</pre> value.
+     @throws IOException if fail to bind event parameters. */
+    final void dispatch(String method, JsonParser parser) throws IOException {
+        final EventChannel channel = _channels.get(method);
+        if (channel == null)    parser.skipChildren();
+        else                    channel.dispatch(parser, _executor);
+    }
+}
@@ -0,0 +1,189 @@
+package org.josh.jcri;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Single event listener registered in {@link EventDispatcher}.
+ Events are queued in a bounded queue and delivered to listener on given executor. At most one
+ delivery task of a subscription is running at the same time, so listener always receives events in
+ arriving order even if executor has many threads.
+ @param <E> type of event parameters.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class EventSubscription<E> implements Subscription {
+    /**Coalescing key used when user does not give a key function: keep only the latest event.*/
+    private static final Object LatestKey = new Object();
+
+    /**Dispatcher that this subscription belongs to.*/
+    private final EventDispatcher<E> _dispatcher;
+    /**User listener.*/
+    private final Consumer<? super E> _listener;
+    /**Executor for running listener.*/
+    private final Executor _executor;
+    /**Max count of queued events.*/
+    private final int _capacity;
+    /**Queue overflow policy.*/
+    private final OverflowPolicy _policy;
+    /**Coalescing key of event, only used by {@link OverflowPolicy#COALESCE}.*/
+    @Nullable private final Function<? super E, ?> _coalesceKey;
+    /**Events waiting to be delivered, used when policy is not {@link OverflowPolicy#COALESCE}.*/
+    @Nullable private final ArrayDeque<E> _queue;
+    /**Events waiting to be delivered in arriving order, used by {@link OverflowPolicy#COALESCE}.*/
+    @Nullable private final LinkedHashMap<Object, E> _coalesceQueue;
+    /**Lock of queue.*/
+    private final ReentrantLock _lock = new ReentrantLock();
+    /**Signaled when queue is not full, used by {@link OverflowPolicy#BLOCK}.*/
+    private final Condition _notFull = _lock.newCondition();
+    /**Count of pending work, the delivery task is scheduled when this changes from 0 to 1.*/
+    private final AtomicInteger _wip = new AtomicInteger(0);
+    private volatile boolean _active = true;
+    private volatile int _size = 0;
+    private volatile long _dropped = 0;
+    private volatile long _coalesced = 0;
+
+    /**Create subscription.
+     @param capacity max count of queued events, must be positive.
+     @param policy queue overflow policy.
+     @param coalesceKey coalescing key of event for {@link OverflowPolicy#COALESCE}. Use null to keep
+        only the latest event. */
+    EventSubscription(EventDispatcher<E> dispatcher, Consumer<? super E> listener, Executor executor,
+        int capacity, OverflowPolicy policy, @Nullable Function<? super E, ?> coalesceKey
+    ) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        _dispatcher = dispatcher; _listener = listener; _executor = executor;
+        _capacity = capacity; _policy = policy; _coalesceKey = coalesceKey;
+        if (policy == OverflowPolicy.COALESCE) {
+            _queue = null;
+            _coalesceQueue = new LinkedHashMap<>();
+        }
+        else {
+            _queue = new ArrayDeque<>(Math.min(capacity, 16));
+            _coalesceQueue = null;
+        }
+    }
+
+    @Override public final String getMethod() { return _dispatcher.getMethod(); }
+    @Override public final boolean isActive() { return _active; }
+    @Override public final int getCapacity() { return _capacity; }
+    @Override public final OverflowPolicy getOverflowPolicy() { return _policy; }
+    @Override public final int getQueueSize() { return _size; }
+    @Override public final long getDroppedCount() { return _dropped; }
+    @Override public final long getCoalescedCount() { return _coalesced; }
+
+    @Override public void close() {
+        if (!_active)   return;
+        _active = false;
+        _dispatcher.remove(this);
+        _lock.lock();
+        try {
+            if (_queue != null)     _queue.clear();
+            else                    _coalesceQueue.clear();
+            _size = 0;
+            _notFull.signalAll();
+        }
+        finally { _lock.unlock(); }
+    }
+
+    /**Queue an event and schedule delivery if needed.
+     If policy is {@link OverflowPolicy#BLOCK}, calling thread is blocked until queue is not full.*/
+    void offer(E event) {
+        if (!_active)   return;
+        _lock.lock();
+        try {
+            if (_queue != null) {
+                if (_queue.size() >= _capacity) {
+                    switch (_policy) {
+                    case BLOCK:
+                        try {
+                            while (_active && _queue.size() >= _capacity)   _notFull.await();
+                        }
+                        catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            ++_dropped;
+                            return;
+                        }
+                        if (!_active)   return;
+                        break;
+                    case DROP_OLDEST:
+                        _queue.pollFirst();
+                        ++_dropped;
+                        break;
+                    default:    // DROP_NEWEST
+                        ++_dropped;
+                        return;
+                    }
+                }
+                _queue.offerLast(event);
+                _size = _queue.size();
+            }
+            else {
+                final Object key = _coalesceKey != null ? _coalesceKey.apply(event) : LatestKey;
+                //! Replacing value keeps key's position in queue
+                if (_coalesceQueue.put(key, event) != null) {
+                    ++_coalesced;
+                    return;
+                }
+                if (_coalesceQueue.size() > _capacity) {
+                    final Iterator<?> eldest = _coalesceQueue.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    ++_dropped;
+                }
+                _size = _coalesceQueue.size();
+            }
+        }
+        finally { _lock.unlock(); }
+        if (_wip.getAndIncrement() == 0)
+            _executor.execute(this::drain);
+    }
+
+    /**Take out first queued event.
+     @return null if queue is empty. */
+    @Nullable private E poll() {
+        _lock.lock();
+        try {
+            final E event;
+            if (_queue != null) {
+                event = _queue.pollFirst();
+                _size = _queue.size();
+            }
+            else {
+                final Iterator<Map.Entry<Object, E>> it = _coalesceQueue.entrySet().iterator();
+                if (it.hasNext()) {
+                    event = it.next().getValue();
+                    it.remove();
+                }
+                else
+                    event = null;
+                _size = _coalesceQueue.size();
+            }
+            if (event != null)  _notFull.signal();
+            return event;
+        }
+        finally { _lock.unlock(); }
+    }
+
+    /**Deliver all queued events to listener.*/
+    private void drain() {
+        int missed = 1;
+        do {
+            E event;
+            while (_active && (event = poll()) != null) {
+                try { _listener.accept(event); }
+                catch (RuntimeException e) { e.printStackTrace(); }
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
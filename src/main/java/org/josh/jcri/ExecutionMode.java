@@ -0,0 +1,87 @@
+package org.josh.jcri;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Threads that run connecting, event listeners, and asynchronous stages of method futures of a
+ connection. In all modes a reply is bound and its method future is completed on the receiving thread;
+ stages added by <pre>thenApplyAsync</pre> and other asynchronous methods without executor run in the
+ connection's executor instead of {@link java.util.concurrent.ForkJoinPool#commonPool()} on Java 9 and
+ later.
+ @see JCRI#create(java.net.URI, ExecutionMode)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public enum ExecutionMode {
+    /**Run everything on the calling thread: listeners and asynchronous stages run on the receiving
+     thread, and {@link JCRI#connect()} blocks the caller. Lowest latency, but a slow listener delays
+     all replies and events of the connection. */
+    SAME_THREAD,
+    /**Run on a fixed pool whose size is system property <pre>org.josh.jcri.defaultIOThread</pre>, 1 by
+     default. Listeners must not block waiting for method futures if all pool threads may block. */
+    BOUNDED_POOL,
+    /**Run each task on a new virtual thread, only supported on Java 21 and later. Listeners can block
+     cheaply. */
+    VIRTUAL_THREADS;
+
+    /**<pre>Executors.newVirtualThreadPerTaskExecutor()</pre>, null if running on Java before 21.*/
+    @Nullable private static final Method NewVirtualThreadExecutor = findVirtualThreadExecutor();
+
+    /**Get if this mode is supported by running Java.*/
+    public boolean isSupported() { return this != VIRTUAL_THREADS || NewVirtualThreadExecutor != null; }
+
+    /**Create executor of this mode.
+     @param poolSize thread count of {@link #BOUNDED_POOL}.
+     @throws UnsupportedOperationException if this mode is not supported by running Java. */
+    ExecutorService newExecutor(int poolSize) throws UnsupportedOperationException {
+        switch (this) {
+        case SAME_THREAD:
+            return new SameThreadExecutor();
+        case BOUNDED_POOL:
+            return Executors.newFixedThreadPool(poolSize);
+        default:
+            if (NewVirtualThreadExecutor == null)
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+            try { return (ExecutorService)NewVirtualThreadExecutor.invoke(null); }
+            catch (IllegalAccessException | InvocationTargetException e) {
+                throw new UnsupportedOperationException("Fail to create virtual thread executor", e);
+            }
+        }
+    }
+
+    /**Look up factory of virtual thread executor by reflection, so this class still loads on Java 8.*/
+    @Nullable private static Method findVirtualThreadExecutor() {
+        try { return Executors.class.getMethod("newVirtualThreadPerTaskExecutor"); }
+        catch (NoSuchMethodException e) {   // Java before 21
+            return null;
+        }
+    }
+
+    /**Executor that runs task on the calling thread, and only rejects tasks after shutdown.*/
+    private static final class SameThreadExecutor extends AbstractExecutorService {
+        private volatile boolean _shutdown = false;
+
+        @Override public void execute(Runnable command) {
+            if (_shutdown)  throw new RejectedExecutionException("Executor is shutdown");
+            command.run();
+        }
+
+        @Override public void shutdown() { _shutdown = true; }
+        @Override public List<Runnable> shutdownNow() {
+            _shutdown = true;
+            return Collections.emptyList();
+        }
+        @Override public boolean isShutdown() { return _shutdown; }
+        //! Running tasks are not tracked, they belong to callers
+        @Override public boolean isTerminated() { return _shutdown; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return _shutdown; }
+    }
+}
@@ -0,0 +1,31 @@
+package org.josh.jcri;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Future whose asynchronous stages without executor run in a connection's executor.
+ {@link #defaultExecutor()} and {@link #newIncompleteFuture()} override methods added in Java 9, so
+ dependent futures keep the executor too. On Java 8 they are never called, and asynchronous stages run
+ in {@link java.util.concurrent.ForkJoinPool#commonPool()}.
+ @param <T> type of value.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class ExecutorBoundFuture<T> extends CompletableFuture<T> {
+    private final Executor _executor;
+
+    ExecutorBoundFuture(Executor executor) { _executor = executor; }
+
+    /**Create completed future.*/
+    static <T> ExecutorBoundFuture<T> completed(Executor executor, T value) {
+        final ExecutorBoundFuture<T> future = new ExecutorBoundFuture<>(executor);
+        future.complete(value);
+        return future;
+    }
+
+    /**Get executor of asynchronous stages, overrides method of Java 9.*/
+    public Executor defaultExecutor() { return _executor; }
+
+    /**Create dependent future with the same executor, overrides method of Java 9.*/
+    public <U> CompletableFuture<U> newIncompleteFuture() { return new ExecutorBoundFuture<>(_executor); }
+}
@@ -0,0 +1,11 @@
+package org.josh.jcri;
+
+/**Behavior of {@link FanOut} when command of a target fails.
+ @author Joshua */
+public enum FailurePolicy {
+    /**Stop dispatching to remaining targets, cancel commands in flight, and fail the whole run with the
+     first failure. */
+    FAIL_FAST,
+    /**Keep running on all targets, and report failures of each target together with results.*/
+    COLLECT_ALL
+}
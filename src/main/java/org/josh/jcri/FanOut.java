@@ -0,0 +1,218 @@
+package org.josh.jcri;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Scatter-gather runner of a command across many targets with bounded concurrency.
+ Each target's command is created by a factory, such as a domain method constructed with a
+ {@link TargetSession} or {@link JCRI} of the target, so commands are sent through the normal method
+ calling path. A new command is dispatched only when one in flight completes, so hundreds of targets
+ need no thread per target.
+ <pre>
+ new FanOut&lt;TargetSession, ScreenshotResult&gt;(session -&gt; new CaptureScreenshot(session).call())
+     .setConcurrency(16)
+     .onResult((session, shot) -&gt; save(session.getTargetId(), shot))
+     .run(sessions);
+ </pre>
+ <p>Each result is streamed to {@link #onResult(BiConsumer)} listener as soon as it arrives, and the
+ future returned by {@link #run(Collection)} is completed when all targets are done. Listeners are
+ called by the thread completing the command, usually the receiving thread, and must not block.</p>
+ <p>A failed result ({@link ResultBase#isSuccess()} is false) is handled as a failure with
+ {@link IllegalStateException}.</p>
+ @param <T> type of target.
+ @param <R> type of command result.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class FanOut<T, R> {
+    /**Default count of commands in flight.*/
+    private static final int DefaultConcurrency = 8;
+
+    private final Function<? super T, ? extends CompletionStage<? extends R>> _command;
+    private volatile int _concurrency = DefaultConcurrency;
+    private volatile FailurePolicy _policy = FailurePolicy.COLLECT_ALL;
+    @Nullable private volatile BiConsumer<? super T, ? super R> _resultListener;
+    @Nullable private volatile BiConsumer<? super T, ? super Throwable> _failureListener;
+
+    /**Create runner of given command with {@link FailurePolicy#COLLECT_ALL} policy.
+     @param command factory that sends the command to a target. Return the method's future directly, so
+        that it can be cancelled by {@link FailurePolicy#FAIL_FAST}. */
+    public FanOut(Function<? super T, ? extends CompletionStage<? extends R>> command) { _command = command; }
+
+    /**Set max count of commands in flight, 8 by default.
+     @throws IllegalArgumentException if concurrency is not positive. */
+    public FanOut<T, R> setConcurrency(int concurrency) throws IllegalArgumentException {
+        if (concurrency <= 0)   throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        _concurrency = concurrency;
+        return this;
+    }
+
+    /**Set behavior when command of a target fails.*/
+    public FanOut<T, R> setFailurePolicy(FailurePolicy policy) {
+        _policy = policy;
+        return this;
+    }
+
+    /**Set listener of each successful result, called as soon as it arrives.
+     @param listener listener of target and its result, use null to remove. */
+    public FanOut<T, R> onResult(@Nullable BiConsumer<? super T, ? super R> listener) {
+        _resultListener = listener;
+        return this;
+    }
+
+    /**Set listener of each failure, called as soon as it happens. With {@link FailurePolicy#FAIL_FAST}
+     only the first failure is reported.
+     @param listener listener of target and its failure, use null to remove. */
+    public FanOut<T, R> onFailure(@Nullable BiConsumer<? super T, ? super Throwable> listener) {
+        _failureListener = listener;
+        return this;
+    }
+
+    /**Run command on given targets, in iteration order as concurrency allows.
+     @param targets distinct targets, the collection must not be modified until run is done.
+     @return future of results and failures of all targets. With {@link FailurePolicy#FAIL_FAST} it is
+        completed exceptionally with the first failure. Cancel it to stop dispatching and cancel
+        commands in flight. */
+    public CompletableFuture<Gathered<T, R>> run(Collection<? extends T> targets) {
+        final Run run = new Run(targets.iterator(), _concurrency, _policy);
+        run.future.whenComplete((gathered, e) -> {
+            if (e != null)  run.abort();
+        });
+        run.dispatch();
+        return run.future;
+    }
+
+    /**Results and failures of all targets.*/
+    public static final class Gathered<T, R> {
+        private final Map<T, R> _results;
+        private final Map<T, Throwable> _failures;
+
+        private Gathered(Map<T, R> results, Map<T, Throwable> failures) {
+            _results = Collections.unmodifiableMap(results);
+            _failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**Get successful results keyed by target, in completion order.*/
+        public Map<T, R> getResults() { return _results; }
+        /**Get failures keyed by target, in completion order.*/
+        public Map<T, Throwable> getFailures() { return _failures; }
+        /**Get if no target fails.*/
+        public boolean isAllSuccess() { return _failures.isEmpty(); }
+    }
+
+    /**State of a single run, guarded by itself.*/
+    private final class Run {
+        private final CompletableFuture<Gathered<T, R>> future = new CompletableFuture<>();
+        private final Iterator<? extends T> _targets;
+        private final int _concurrency;
+        private final FailurePolicy _policy;
+        private final Map<T, R> _results = new LinkedHashMap<>();
+        private final Map<T, Throwable> _failures = new LinkedHashMap<>();
+        /**Futures of commands in flight, for cancelling.*/
+        private final Map<CompletableFuture<?>, T> _inFlight = new IdentityHashMap<>();
+        /**Whether a thread is dispatching, so commands completed while dispatching do not recurse.*/
+        private boolean _dispatching = false;
+        private boolean _stopped = false;
+
+        private Run(Iterator<? extends T> targets, int concurrency, FailurePolicy policy) {
+            _targets = targets; _concurrency = concurrency; _policy = policy;
+        }
+
+        /**Dispatch commands until concurrency is reached or all targets are dispatched, and complete
+         the run when all targets are done.*/
+        private void dispatch() {
+            synchronized (this) {
+                if (_dispatching)   return;
+                _dispatching = true;
+            }
+            while (true) {
+                T target = null;
+                boolean completed = false;
+                synchronized (this) {
+                    if (!_stopped && _inFlight.size() < _concurrency && _targets.hasNext())
+                        target = _targets.next();
+                    else {
+                        _dispatching = false;
+                        completed = !_stopped && _inFlight.isEmpty() && !_targets.hasNext();
+                        if (completed)  _stopped = true;
+                    }
+                }
+                if (target == null) {
+                    if (completed)  future.complete(new Gathered<>(_results, _failures));
+                    return;
+                }
+                start(target);
+            }
+        }
+
+        /**Send command of a target.*/
+        private void start(T target) {
+            final CompletableFuture<? extends R> command;
+            try { command = _command.apply(target).toCompletableFuture(); }
+            catch (RuntimeException e) {    // e.g. IllegalArgumentException of invalid parameters
+                onDone(target, null, null, e);
+                return;
+            }
+            synchronized (this) {
+                if (_stopped) {
+                    command.cancel(false);
+                    return;
+                }
+                _inFlight.put(command, target);
+            }
+            command.whenComplete((result, e) -> {
+                onDone(target, command, result, e);
+                dispatch();
+            });
+        }
+
+        /**Record result or failure of a target, and stream it to listener.*/
+        private void onDone(T target, @Nullable CompletableFuture<?> command, @Nullable R result, @Nullable Throwable e) {
+            Throwable failure = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (failure == null && result instanceof ResultBase && !((ResultBase)result).isSuccess())
+                failure = new IllegalStateException(((ResultBase)result).getError());
+            final boolean failFast = failure != null && _policy == FailurePolicy.FAIL_FAST;
+            synchronized (this) {
+                if (command != null)    _inFlight.remove(command);
+                if (_stopped)   return;
+                if (failure == null)    _results.put(target, result);
+                else                    _failures.put(target, failure);
+                if (failFast)   _stopped = true;
+            }
+            if (failure == null)    callListener(_resultListener, target, result);
+            else                    callListener(_failureListener, target, failure);
+            //! Commands in flight are cancelled when future is completed
+            if (failFast)   future.completeExceptionally(failure);
+        }
+
+        /**Stop dispatching and cancel commands in flight.*/
+        private void abort() {
+            final CompletableFuture<?>[] commands;
+            synchronized (this) {
+                _stopped = true;
+                commands = _inFlight.keySet().toArray(new CompletableFuture<?>[0]);
+                _inFlight.clear();
+            }
+            for (CompletableFuture<?> command : commands)   command.cancel(false);
+        }
+
+        /**Call listener, exception of listener does not affect the run.*/
+        private <V> void callListener(@Nullable BiConsumer<? super T, ? super V> listener, T target, V value) {
+            if (listener == null)   return;
+            try { listener.accept(target, value); }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
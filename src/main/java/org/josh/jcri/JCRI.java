@@ -1,24 +1,33 @@
 package org.josh.jcri;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**JCRI main class.
- TODO: provide onError, and onClose handler
- TODO: provide executor for executing event callback
  TODO: provide handy methods by combining a set of debug protocol methods
  @author Joshua */
 @ParametersAreNonnullByDefault
@@ -28,51 +37,44 @@ public class JCRI implements Closeable {
     /**Default connection timeout second.*/
     private static final int DefaultConnectionTimeout = 30;
 
-    /**Web socket instance.*/
-    private final WebSocket _ws;
+    /**Connection to browser, web socket or pipe.*/
+    private final Transport _transport;
     /**Event handler center.*/
     private final EventCenter _evt;
     /**_ioExecutor needs to shutdown when {@link #close()} or {@link #closeAsync()} is called. */
     private boolean _shutdownExecutorWhenClose = false;
+    /**Behavior when connection is lost, null to never reconnect.*/
+    @Nullable private volatile ReconnectPolicy _reconnectPolicy;
+    /**Whether connection is closed by {@link #close()} or {@link #closeAsync()}.*/
+    private volatile boolean _closedByUser = false;
+    /**Whether reconnecting is in progress.*/
+    private final AtomicBoolean _reconnecting = new AtomicBoolean(false);
+    /**The last web socket error, used as cause of connection closed exception.*/
+    @Nullable private volatile Exception _lastError;
+    /**Name of registered metrics MBean, null if not registered.*/
+    @Nullable private ObjectName _mbeanName;
 
 
     /**Get all available tabs' information in target browser which had debug interface bound on given
-     host and port.
+     host and port. This is a blocking call without caching, use {@link TargetDiscovery} for polling
+     many browsers.
      @param host host that browser's debug interface is bound on.
      @param port browser's debug port.
      @return list of {@link TabInfo} contains all tabs info (and some other invisible "tabs" used by
-        browser extension). Return empty list if fail to parse browser returned data.
-     @throws IOException if fail to connect to browser by given host and port parameters.*/
+        browser extension).
+     @throws IOException if fail to connect to browser by given host and port parameters, or browser
+        returns invalid data.*/
     public static List<TabInfo> getAllTabInfo(String host, int port) throws IOException {
-        //! Get raw json formatted all tabs' information
-        //! See: https://stackoverflow.com/questions/4328711/read-url-to-string-in-few-lines-of-java-code
-        String rawJson;
-        try (Scanner scanner = new Scanner(
-            new URL(String.format("http://%s:%d/json", host, port)).openStream(), StandardCharsets.UTF_8.toString()
-        ).useDelimiter("\\A")) {
-            rawJson = scanner.next();
-        }
-        catch (MalformedURLException e) {
-            return Collections.emptyList();
-        }
-
-        //! Process raw json
-        ObjectMapper objectMapper = new ObjectMapper();
-        try { return objectMapper.readValue(rawJson, new TypeReference<List<TabInfo>>() {}); }
-        catch (IOException e) {
-            //! This exception means:
-            //!  1. browser returns incomplete json string, so Jackson fail to parse it.
-            //!  2. format of returned json string is changed.
-            return Collections.emptyList();
-        }
+        return TargetDiscovery.fetchTabs(host, port, defaultConnectionTimeout() * 1000);
     }
 
     /**Get all available tabs' information in target browser which had debug interface bound on given
      localhost and port.
      @param port browser's debug port.
      @return list of {@link TabInfo} contains all tabs info (and some other invisible "tabs" used by
-         browser extension). Return empty list if fail to parse browser returned data.
-     @throws IOException if fail to connect to browser by given host and port parameters.*/
+         browser extension).
+     @throws IOException if fail to connect to browser by given host and port parameters, or browser
+        returns invalid data.*/
     public static List<TabInfo> getAllTabInfo(int port) throws IOException {
         return getAllTabInfo("localhost", port);
     }
@@ -85,8 +87,24 @@ public class JCRI implements Closeable {
         when {@link #close()} or {@link #closeAsync()} is called. To change this behavior, call
         {@link #shutdownExecutorWhenClose(boolean)}. */
     public JCRI(URI webSocketDebuggerUrl, int timeout, @Nullable ExecutorService ioExecutor) {
-        _evt = new EventCenter(ioExecutor);
-        _ws = new WebSocket(webSocketDebuggerUrl, timeout, _evt::onMessage, this::onError, this::onClose);
+        this(webSocketDebuggerUrl, timeout, new EventCenter(ioExecutor));
+    }
+
+    private JCRI(URI webSocketDebuggerUrl, int timeout, EventCenter eventCenter) {
+        _evt = eventCenter;
+        _transport = new WebSocket(webSocketDebuggerUrl, timeout, _evt::onMessage, this::onError, this::onClose);
+    }
+
+    /**Create new connection to browser whose connecting, event listeners, and asynchronous stages of
+     method futures run in an executor of given mode. The executor is shutdown when connection is
+     closed.
+     @param webSocketDebuggerUrl destination web socket debug url that is provided by browser.
+     @param mode threading mode, see {@link ExecutionMode}.
+     @throws UnsupportedOperationException if mode is not supported by running Java. */
+    public static JCRI create(URI webSocketDebuggerUrl, ExecutionMode mode) throws UnsupportedOperationException {
+        final JCRI jcri = new JCRI(webSocketDebuggerUrl, defaultConnectionTimeout(), new EventCenter(null, mode));
+        jcri.shutdownExecutorWhenClose(true);
+        return jcri;
     }
 
     /**Create new connection to browser with specified URL and default connection timeout.
@@ -95,32 +113,310 @@ public class JCRI implements Closeable {
         when {@link #close()} or {@link #closeAsync()} is called. To change this behavior, call
         {@link #shutdownExecutorWhenClose(boolean)}. */
     public JCRI(URI webSocketDebuggerUrl, @Nullable ExecutorService ioExecutor) {
-        this(webSocketDebuggerUrl, DefaultConnectionTimeout, ioExecutor);
-        try {
-            final int timeout = Integer.parseInt(System.getProperty(DefaultConnectionTimeoutPropertyName));
-            if (timeout != DefaultConnectionTimeout)
-                _ws.setConnectionLostTimeout(timeout);
+        this(webSocketDebuggerUrl, defaultConnectionTimeout(), ioExecutor);
+    }
+
+    /**Create new connection to browser over a pair of pipes, such as named pipes connected to browser
+     launched with <pre>--remote-debugging-pipe</pre>. Messages are NUL terminated json texts.
+     Call {@link #connect()} to start reading.
+     @param in channel of browser's output (browser's file descriptor 4).
+     @param out channel of browser's input (browser's file descriptor 3).
+     @param ioExecutor executor for providing IO waiting threads.
+     @see #launchWithPipe(List, ExecutorService) */
+    public JCRI(ReadableByteChannel in, WritableByteChannel out, @Nullable ExecutorService ioExecutor) {
+        this(in, out, null, ioExecutor);
+    }
+
+    /**Create new connection over pipes of a browser process.
+     @param process browser process which is destroyed when connection is closed, null if not owned. */
+    private JCRI(ReadableByteChannel in, WritableByteChannel out, @Nullable Process process,
+        @Nullable ExecutorService ioExecutor
+    ) {
+        _evt = new EventCenter(ioExecutor);
+        _transport = new PipeTransport(in, out, process, _evt::onMessage, this::onError, this::onClose);
+    }
+
+    /**Launch browser as child process and connect to it over pipes instead of web socket.
+     Browser is started by <pre>sh</pre> with <pre>--remote-debugging-pipe</pre> appended, and its file
+     descriptors 3 and 4 are redirected to standard input and output of the process, which are
+     connected to this JCRI instance. Browser's own standard output is redirected to its standard error,
+     which is discarded. Connection is already connected when returned, and browser process is
+     destroyed when connection is closed.
+     <p>This requires a POSIX shell, such as on Linux and macOS.</p>
+     @param command browser executable and its arguments, such as
+        <pre>["/usr/bin/chromium", "--headless", "--no-sandbox"]</pre>.
+     @param ioExecutor executor for providing IO waiting threads.
+     @throws IOException if fail to start browser. */
+    public static JCRI launchWithPipe(List<String> command, @Nullable ExecutorService ioExecutor) throws IOException {
+        if (command.isEmpty())  throw new IllegalArgumentException("Browser command is empty");
+        final List<String> shell = new ArrayList<>(command.size() + 4);
+        //! $0 is browser executable and $@ is its arguments
+        shell.add("sh");
+        shell.add("-c");
+        shell.add("exec \"$0\" \"$@\" --remote-debugging-pipe 3<&0 4>&1 0</dev/null 1>&2");
+        shell.addAll(command);
+        final Process process = new ProcessBuilder(shell)
+            .redirectError(ProcessBuilder.Redirect.appendTo(new File("/dev/null")))
+            .start();
+        final JCRI jcri = new JCRI(Channels.newChannel(process.getInputStream()),
+            PipeTransport.channelOf(process.getOutputStream()), process, ioExecutor);
+        try { jcri._transport.connectBlocking(); }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return jcri;
+    }
+
+    /**Get default web socket connection timeout from system property.*/
+    private static int defaultConnectionTimeout() {
+        try { return Integer.parseInt(System.getProperty(DefaultConnectionTimeoutPropertyName)); }
         catch (IllegalArgumentException e) {    // also include NumberFormatException
-            // Do nothing, just use default value
+            return DefaultConnectionTimeout;
         }
     }
 
-    /**Get if web socket connection is closed.*/
-    public boolean isClosed() { return _ws.isClosed(); }
-    /**Get if web socket connection is currently closing.*/
-    public boolean isClosing() { return _ws.isClosing(); }
-    /**Get if web socket connection is opened (connected).*/
-    public boolean isConnected() { return _ws.isOpen(); }
+    /**Get if connection is closed.*/
+    public boolean isClosed() { return _transport.isClosed(); }
+    /**Get if connection is currently closing.*/
+    public boolean isClosing() { return _transport.isClosing(); }
+    /**Get if connection is opened (connected).*/
+    public boolean isConnected() { return _transport.isOpen(); }
+    final EventCenter getEventCenter() { return _evt; }
+
+    /**Get threading mode of this connection's executor. Connections created with a given executor are
+     {@link ExecutionMode#BOUNDED_POOL}.*/
+    public ExecutionMode getExecutionMode() { return _evt.getExecutionMode(); }
+
     /**Set io executor needs to shutdown when {@link #close()} or {@link #closeAsync()} is called.
      If set to false, user needs to manually shutdown it or the application will hang on exit. */
     public void shutdownExecutorWhenClose(boolean enable) { _shutdownExecutorWhenClose = enable; }
 
-    /**Connect to browser.
+    /**Attach to a target through this connection with flattened session mode.
+     This connection should be connected to browser level debugger url (see
+     <pre>http://host:port/json/version</pre>), then all attached targets share this connection.
+     @param targetId Id of target to attach, such as {@link TabInfo#getId()}.
+     @return future of attached session. It is completed exceptionally with
+        {@link IllegalStateException} if browser refuses to attach. */
+    public CompletableFuture<TargetSession> attachToTarget(String targetId) {
+        final String params;
+        try { params = "{\"targetId\":" + EventCenter.serializeJson(targetId) + ",\"flatten\":true}"; }
+        catch (JsonProcessingException e) { throw new IllegalArgumentException(e); }
+        return new RawMethod(_evt, _transport, null, "Target.attachToTarget", params)
+            .send(AttachToTargetResult.class, e -> new AttachToTargetResult(ResultBase.ofError(e)))
+            .thenApply(result -> {
+                if (!result.isSuccess())
+                    throw new CompletionException(new IllegalStateException(
+                        "Fail to attach target " + targetId + ": " + result.getError()));
+                final TargetSession session = new TargetSession(_evt, _transport, targetId, result.getSessionId());
+                _evt.addSession(session);
+                return session;
+            });
+    }
+
+    /**Send a method which has no generated domain class through this connection.
+     @param method protocol method name such as <pre>"Browser.getVersion"</pre>.
+     @param params json formatted parameters object.
+     @see RawMethod */
+    <T extends ResultBase> CompletableFuture<T> send(
+        String method, String params, Class<T> resultMetaClass, Function<String, T> failResultFactory
+    ) {
+        return new RawMethod(_evt, _transport, null, method, params).send(resultMetaClass, failResultFactory);
+    }
+
+    /**Set default timeout of waiting browser's reply for methods sent through this connection.
+     Initial value is given by system property <pre>org.josh.jcri.methodTimeout</pre> in millisecond
+     (30 seconds by default).
+     @param timeout timeout duration. Use 0 or negative to indicate never timeout.
+     @param unit unit of timeout. */
+    public void setDefaultMethodTimeout(long timeout, TimeUnit unit) { _evt.setDefaultTimeout(unit.toMillis(timeout)); }
+
+    /**Set behavior when connection is lost unexpectedly.
+     By default connection is never reconnected, and all methods waiting browser's reply are failed
+     with {@link IOException}. Connection over pipes is never reconnected regardless of policy.
+     @param policy reconnecting policy, use null to disable reconnecting. */
+    public void setReconnectPolicy(@Nullable ReconnectPolicy policy) { _reconnectPolicy = policy; }
+    /**Get behavior when connection is lost unexpectedly.
+     @return null if never reconnect. */
+    @Nullable public ReconnectPolicy getReconnectPolicy() { return _reconnectPolicy; }
+    /**Get if connection is lost and reconnecting is in progress.*/
+    public boolean isReconnecting() { return _reconnecting.get(); }
+
+    /**Get a snapshot of latency and throughput metrics of this connection.
+     Counters are zero if metrics are disabled by system property <pre>org.josh.jcri.metrics=false</pre>.*/
+    public MetricsSnapshot getMetrics() { return _evt.getMetrics().snapshot(); }
+
+    /**Start keeping the last raw frames sent and received by this connection in memory.
+     Initially enabled if system property <pre>org.josh.jcri.wireRecorderCapacity</pre> is positive.
+     Replaces current recorder if already enabled.
+     @param capacity count of kept frames, rounded up to power of 2.
+     @return recorder for dumping frames, such as when a method fails unexpectedly.
+     @throws IllegalArgumentException if capacity is not positive. */
+    public WireRecorder enableWireRecorder(int capacity) throws IllegalArgumentException {
+        final WireRecorder recorder = new WireRecorder(capacity);
+        _evt.setWireRecorder(recorder);
+        return recorder;
+    }
+
+    /**Stop keeping raw frames, frames kept by current recorder are not cleared.*/
+    public void disableWireRecorder() { _evt.setWireRecorder(null); }
+
+    /**Get current raw frame recorder.
+     @return null if disabled. */
+    @Nullable public WireRecorder getWireRecorder() { return _evt.getWireRecorder(); }
+
+    /**Start appending all frames sent and received by this connection to a binary log file, which can
+     be replayed by {@link TrafficReplayer}. Current log is closed if already started.
+     @param file log file, an existing file is replaced.
+     @return log which is closed by {@link #stopTrafficLog()}.
+     @throws IOException if fail to create log file. */
+    public TrafficLog startTrafficLog(Path file) throws IOException {
+        final TrafficLog log = new TrafficLog(file);
+        final TrafficLog previous = _evt.getTrafficLog();
+        _evt.setTrafficLog(log);
+        if (previous != null)   previous.close();
+        return log;
+    }
+
+    /**Stop logging frames and close current log.
+     @throws IOException if fail to flush log file. */
+    public void stopTrafficLog() throws IOException {
+        final TrafficLog log = _evt.getTrafficLog();
+        _evt.setTrafficLog(null);
+        if (log != null)    log.close();
+    }
+
+    /**Get current binary log of frames.
+     @return null if not started. */
+    @Nullable public TrafficLog getTrafficLog() { return _evt.getTrafficLog(); }
+
+    /**Serve results of idempotent query methods from given cache, such as
+     <pre>ResultCache.withDefaults(256)</pre>. Disabled by default. Enable cache before enabling
+     domains, because cache only trusts domains enabled after it is set.
+     @param cache cache of this connection, use null to disable. */
+    public void setResultCache(@Nullable ResultCache cache) { _evt.setResultCache(cache); }
+
+    /**Get cache of query methods' results.
+     @return null if disabled. */
+    @Nullable public ResultCache getResultCache() { return _evt.getResultCache(); }
+
+    /**Send methods through given scheduler, which limits in-flight window and rate of commands, and
+     sends critical commands ahead of bulk ones. Disabled by default, methods are sent immediately.
+     @param scheduler scheduler of this connection only, use null to disable. Commands already queued
+        are still sent by previous scheduler. */
+    public void setCommandScheduler(@Nullable CommandScheduler scheduler) { _evt.setCommandScheduler(scheduler); }
+
+    /**Get scheduler of outbound commands.
+     @return null if disabled. */
+    @Nullable public CommandScheduler getCommandScheduler() { return _evt.getCommandScheduler(); }
+
+    /**Register metrics of this connection into platform MBean server as {@link MetricsMXBean}.
+     The MBean is unregistered when this connection is closed by {@link #close()} or
+     {@link #closeAsync()}.
+     @return registered object name, such as
+        <pre>org.josh.jcri:type=Connection,url="ws://localhost:9222/devtools/page/ID"</pre>.
+     @throws JMException if fail to register, such as already registered. */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (_mbeanName != null)     return _mbeanName;
+        final ObjectName name = new ObjectName(
+            "org.josh.jcri:type=Connection,url=" + ObjectName.quote(_transport.getEndpoint()));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(_evt.getMetrics(), name);
+        _mbeanName = name;
+        return name;
+    }
+
+    /**Unregister metrics MBean if registered.*/
+    private synchronized void unregisterMBean() {
+        if (_mbeanName == null)     return;
+        try { ManagementFactory.getPlatformMBeanServer().unregisterMBean(_mbeanName); }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+        _mbeanName = null;
+    }
+
+    /**Create a new batch of methods which are sent together by {@link CommandBatch#send()}.*/
+    public CommandBatch newBatch() { return new CommandBatch(_evt, _transport); }
+
+    /**Set default executor for delivering events to listeners.
+     By default events are delivered on io executor given in constructor. This only affects listeners
+     that are added later. */
+    public void setEventExecutor(Executor executor) { _evt.getEventRegistry().setExecutor(executor); }
+
+    /**Add listener of protocol event.
+     Events of a listener are always delivered in arriving order. Listener has a bounded queue with
+     capacity given by system property <pre>org.josh.jcri.defaultEventQueueCapacity</pre> (1024 by
+     default), and drops the oldest queued event when queue is full ({@link OverflowPolicy#DROP_OLDEST}).
+     Use {@link #on(String, Class, Consumer, Executor, int, OverflowPolicy, Function)} to opt in
+     {@link OverflowPolicy#BLOCK}.
+     @param method event method name such as <pre>"Page.loadEventFired"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param listener callback which is run on default event executor.
+     @return subscription handle for removing this listener. */
+    public <E> Subscription on(String method, Class<E> eventMetaClass, Consumer<? super E> listener) {
+        return _evt.getEventRegistry().subscribe(method, eventMetaClass, listener, null);
+    }
+
+    /**Add listener of protocol event which is run on given executor.
+     @param method event method name such as <pre>"Page.loadEventFired"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param listener callback of event.
+     @param executor executor to run listener.
+     @return subscription handle for removing this listener. */
+    public <E> Subscription on(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, Executor executor
+    ) {
+        return _evt.getEventRegistry().subscribe(method, eventMetaClass, listener, executor);
+    }
+
+    /**Add listener of protocol event with bounded queue and given overflow policy.
+     Use this for high-rate events such as <pre>"Network.dataReceived"</pre> or
+     <pre>"Page.screencastFrame"</pre> so that slow listener cannot exhaust memory.
+     @param method event method name such as <pre>"Page.screencastFrame"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param listener callback of event.
+     @param executor executor to run listener. Use null for default event executor.
+     @param capacity max count of queued events of this listener.
+     @param policy behavior when queue is full.
+     @param coalesceKey coalescing key of {@link OverflowPolicy#COALESCE}, events with the same key
+        replace each other in queue. Use null to keep only the latest event.
+     @return subscription handle for removing this listener and reading queue counters.
+     @throws IllegalArgumentException if capacity is not positive. */
+    public <E> Subscription on(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, @Nullable Executor executor,
+        int capacity, OverflowPolicy policy, @Nullable Function<? super E, ?> coalesceKey
+    ) {
+        return _evt.getEventRegistry().subscribe(
+            method, eventMetaClass, listener, executor, capacity, policy, coalesceKey);
+    }
+
+    /**Wait next protocol event of given method.
+     Cancel returned future to stop waiting.
+     @param method event method name such as <pre>"Page.loadEventFired"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @return future which is completed by next event on default event executor. */
+    public <E> CompletableFuture<E> once(String method, Class<E> eventMetaClass) {
+        return _evt.getEventRegistry().once(method, eventMetaClass);
+    }
+
+    /**Decode {@link BinaryData} fields of given event into user supplied sinks instead of byte arrays,
+     such as writing each <pre>Page.screencastFrame</pre> into a file.
+     @param method event method name such as <pre>"Page.screencastFrame"</pre>.
+     @param eventMetaClass meta class of event parameters type.
+     @param sinkFactory called once for each event by the receiving thread, before event is delivered
+        to listeners. Use null to decode into byte arrays again. */
+    public <E> void setEventBinarySink(
+        String method, Class<E> eventMetaClass, @Nullable Supplier<? extends BinarySink> sinkFactory
+    ) {
+        _evt.getEventRegistry().setBinarySink(method, eventMetaClass, sinkFactory);
+    }
+
+    /**Connect to browser in connection's executor, or on the calling thread in
+     {@link ExecutionMode#SAME_THREAD} mode.
      @return boolean value indicates whether connection established or not.*/
     public CompletableFuture<Boolean> connect() {
+        _closedByUser = false;
         return CompletableFuture.supplyAsync(() -> {
-            try { return _ws.connectBlocking(); }
+            try { return _transport.connectBlocking(); }
             catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 return false;
@@ -129,36 +425,120 @@ public class JCRI implements Closeable {
     }
 
     /**Close connection.
-     Note that calling this method will only close web socket connection, and the browser is still
-     running.
+     Note that calling this method will only close connection, and the browser is still running unless
+     it is launched by {@link #launchWithPipe(List, ExecutorService)}.
      @apiNote this is a blocking operation. */
     @Override public void close() {
+        _closedByUser = true;
+        unregisterMBean();
         if (_shutdownExecutorWhenClose)     _evt.getExecutor().shutdownNow();
-        try { _ws.closeBlocking(); }
+        try { _transport.closeBlocking(); }
         catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
     /**Close connection asynchronously.
-     Note that calling this method will only close web socket connection, and the browser is still
-     running.
+     Note that calling this method will only close connection, and the browser is still running unless
+     it is launched by {@link #launchWithPipe(List, ExecutorService)}.
      @see #isClosing()
      @see #isClosed() */
     public void closeAsync() {
+        _closedByUser = true;
+        unregisterMBean();
         if (_shutdownExecutorWhenClose)     _evt.getExecutor().shutdownNow();
-        _ws.close();
+        _transport.close();
     }
 
-    /**On web socket error callback method.*/
+    /**On transport error callback method.
+     Connection is always closed after error, so error is only kept as cause of failing methods in
+     {@link #onClose(int)}. */
     private void onError(Exception exception) {
-        /// TODO: not implemented
+        _lastError = exception;
     }
 
-    /**On web socket is closed callback method.
-     @param code web socket close status code. */
+    /**On transport is closed callback method.
+     If connection is lost unexpectedly and reconnect policy is set, start reconnecting. Otherwise all
+     methods waiting browser's reply are failed.
+     @param code close status code, same as web socket close code. */
     private void onClose(int code) {
-        /// TODO: not implemented
+        //! Failed attempt of reconnecting is handled by reconnecting thread
+        if (_reconnecting.get())    return;
+        final IOException cause = new IOException("Connection closed with code " + code, _lastError);
+        _lastError = null;
+        _evt.removeAllSessions();
+        //! Browser state may change while disconnected, and domains are enabled again after reconnected
+        final ResultCache cache = _evt.getResultCache();
+        if (cache != null)  cache.reset();
+        final ReconnectPolicy policy = _reconnectPolicy;
+        if (policy == null || _closedByUser || !_transport.canReconnect() || !_reconnecting.compareAndSet(false, true)) {
+            discardQueuedCommands();
+            _evt.failAllMethods(cause);
+            return;
+        }
+        discardQueuedCommands();
+        final List<PendingMethod<?>> retries = new ArrayList<>();
+        _evt.drainMethods(method -> {
+            if (policy.isRetryable(method))     retries.add(method);
+            else                                method.completeExceptionally(cause);
+        });
+        //! Transport can not be reconnected from its own thread
+        final Thread thread = new Thread(() -> reconnect(policy, retries, cause), "jcri-reconnect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**Discard commands queued in scheduler before their methods are drained from waiting table, so that
+     failing a method never sends queued commands through closed transport, and retried methods are
+     only sent again after reconnected.*/
+    private void discardQueuedCommands() {
+        final CommandScheduler scheduler = _evt.getCommandScheduler();
+        if (scheduler != null)  scheduler.discardQueued();
+    }
+
+    /**Reconnect with backoff, then enable domains and send retried methods again.
+     @param retries methods which are sent again after reconnected.
+     @param cause exception of losing connection. */
+    private void reconnect(ReconnectPolicy policy, List<PendingMethod<?>> retries, IOException cause) {
+        boolean connected = false;
+        try {
+            for (int attempt = 0; !connected && !_closedByUser && policy.canAttempt(attempt); ++attempt) {
+                sleepExpiring(retries, policy.delayOf(attempt));
+                if (!_closedByUser)     connected = _transport.reconnectBlocking();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _reconnecting.set(false);
+        if (!connected || _closedByUser) {
+            final IOException failure = new IOException("Fail to reconnect to browser", cause);
+            for (PendingMethod<?> method : retries)     method.completeExceptionally(failure);
+            return;
+        }
+        for (MethodBase method : _evt.getEnabledDomainMethods())
+            method.call(EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+        for (PendingMethod<?> method : retries) {
+            if (!method.isDone())   method.getSource().resend(method);
+        }
+    }
+
+    /**Sleep for backoff delay, and expire retried methods whose deadline passes meanwhile. Retried
+     methods are out of waiting table while reconnecting, so timer wheel does not expire them.
+     @param retries retried methods, expired and completed methods are removed.
+     @param delay backoff delay in millisecond. */
+    private static void sleepExpiring(List<PendingMethod<?>> retries, long delay) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        for (;;) {
+            long sleep = end - System.nanoTime();
+            for (Iterator<PendingMethod<?>> it = retries.iterator(); it.hasNext(); ) {
+                final PendingMethod<?> method = it.next();
+                if (method.isDone() || method.expireIfOverdue())    it.remove();
+                else    sleep = Math.min(sleep, method.getRemainingNanos());
+            }
+            if (sleep <= 0)     return;
+            TimeUnit.NANOSECONDS.sleep(sleep);
+        }
     }
 
     @Override public String toString() {
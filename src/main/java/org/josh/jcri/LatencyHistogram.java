@@ -0,0 +1,76 @@
+package org.josh.jcri;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Lock-free log-linear latency histogram in nanosecond, similar to HdrHistogram.
+ Each power of 2 range is split into 8 linear sub-buckets, so recorded value has at most 12.5% error.
+ Buckets are preallocated, recording is only a few atomic increments and never allocates.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class LatencyHistogram {
+    /**Count of bits of sub-bucket index.*/
+    private static final int SubBucketBits = 3;
+    private static final int SubBucketCount = 1 << SubBucketBits;
+    /**Total bucket count which covers all positive long values.*/
+    private static final int BucketCount = ((63 - SubBucketBits) << SubBucketBits) + SubBucketCount;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BucketCount);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong(0);
+
+    /**Get bucket index of value.*/
+    static int indexOf(long value) {
+        if (value < SubBucketCount)     return (int)value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int)(value >>> (exponent - SubBucketBits)) & (SubBucketCount - 1);
+        return ((exponent - SubBucketBits + 1) << SubBucketBits) + subBucket;
+    }
+
+    /**Get the smallest value of bucket.*/
+    static long lowerBoundOf(int index) {
+        if (index < SubBucketCount)     return index;
+        final int exponent = (index >> SubBucketBits) + SubBucketBits - 1;
+        return (long)(SubBucketCount + (index & (SubBucketCount - 1))) << (exponent - SubBucketBits);
+    }
+
+    /**Record a latency value, negative value is recorded as 0.*/
+    void record(long nanos) {
+        if (nanos < 0)  nanos = 0;
+        _counts.incrementAndGet(indexOf(nanos));
+        _count.increment();
+        _sum.add(nanos);
+        long max = _max.get();
+        while (nanos > max && !_max.compareAndSet(max, nanos))  max = _max.get();
+    }
+
+    /**Take a snapshot of percentiles. Concurrent recording may be partially included.*/
+    LatencySnapshot snapshot() {
+        final long[] counts = new long[BucketCount];
+        long total = 0;
+        for (int i = 0; i < BucketCount; ++i) {
+            counts[i] = _counts.get(i);
+            total += counts[i];
+        }
+        final long max = _max.get();
+        return new LatencySnapshot(total, total == 0 ? 0 : _sum.sum() / Math.max(_count.sum(), 1), max,
+            percentile(counts, total, max, 0.5), percentile(counts, total, max, 0.9),
+            percentile(counts, total, max, 0.99), percentile(counts, total, max, 0.999));
+    }
+
+    /**Get value at given percentile, which is the highest value of bucket that contains it.*/
+    private static long percentile(long[] counts, long total, long max, double ratio) {
+        if (total == 0)     return 0;
+        final long rank = Math.max(1, (long)Math.ceil(total * ratio));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank)
+                return i + 1 < counts.length ? Math.min(lowerBoundOf(i + 1) - 1, max) : max;
+        }
+        return max;
+    }
+}
@@ -0,0 +1,36 @@
+package org.josh.jcri;
+
+import java.beans.ConstructorProperties;
+
+/**Latency statistics of a protocol method, from sending command to receiving browser's reply.
+ All values are in nanosecond. Percentiles have at most 12.5% error.
+ @see MetricsSnapshot#getLatencies()
+ @author Joshua */
+public final class LatencySnapshot {
+    private final long _count;
+    private final long _mean;
+    private final long _max;
+    private final long _p50;
+    private final long _p90;
+    private final long _p99;
+    private final long _p999;
+
+    @ConstructorProperties({"count", "mean", "max", "p50", "p90", "p99", "p999"})
+    public LatencySnapshot(long count, long mean, long max, long p50, long p90, long p99, long p999) {
+        _count = count; _mean = mean; _max = max; _p50 = p50; _p90 = p90; _p99 = p99; _p999 = p999;
+    }
+
+    /**Get count of replied methods.*/
+    public long getCount() { return _count; }
+    public long getMean() { return _mean; }
+    public long getMax() { return _max; }
+    public long getP50() { return _p50; }
+    public long getP90() { return _p90; }
+    public long getP99() { return _p99; }
+    public long getP999() { return _p999; }
+
+    @Override public String toString() {
+        return String.format("count=%d, mean=%dns, p50=%dns, p90=%dns, p99=%dns, p999=%dns, max=%dns",
+            _count, _mean, _p50, _p90, _p99, _p999, _max);
+    }
+}
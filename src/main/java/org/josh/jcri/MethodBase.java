@@ -1,92 +1,222 @@
 package org.josh.jcri;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**Common operations and fields for all protocol methods and their parameter classes.
- This base class handles method calling by sending request and waiting response from browser through
- web socket in {@link #call(Class, Function)}, and we use {@link java.util.concurrent.CompletableFuture}
- to hold user specified method as a future task.
+ This base class handles method calling by sending request to browser through transport in
+ {@link #call(Class, Function)}, and returns a {@link java.util.concurrent.CompletableFuture} which is
+ completed by {@link EventCenter} when browser's reply is received. No thread is blocked while waiting
+ for the reply.
  @author Joshua */
 @ParametersAreNonnullByDefault
 abstract class MethodBase implements CommonDomainType {
-    /**Response string replied by browser.
-     This field stores <pre>result</pre> field json formatted string if method executed success, or
-     error message contains in <pre>error</pre> field in browser replied data. */
-    private volatile JsonNode _response;
-    /**Indicate whether method execution is success or not.
-     If this field is <pre>true</pre>, {@link #_response} stores method's return data in json
-     formatted string. Otherwise it stores error message replied by browser. */
-    private volatile boolean _success;
-    /**Latch for waiting browser's reply.*/
-    private final CountDownLatch _latch = new CountDownLatch(1);
-
     private final EventCenter _evt;
-    private final WebSocket _ws;
+    private final Transport _transport;
+    /**Session Id of target that this method is sent to, null for the connected target itself.*/
+    @Nullable private final String _sessionId;
 
-    public MethodBase(EventCenter eventCenter, WebSocket webSocket) {
-        _evt = eventCenter; _ws = webSocket;
+    public MethodBase(EventCenter eventCenter, Transport transport) {
+        this(eventCenter, transport, null);
     }
 
-    /**Check and convert parameter object into json string and send to browser.
+    /**Create method which is sent to an attached target through browser connection.*/
+    public MethodBase(TargetSession session) {
+        this(session.getEventCenter(), session.getTransport(), session.getSessionId());
+    }
+
+    MethodBase(EventCenter eventCenter, Transport transport, @Nullable String sessionId) {
+        _evt = eventCenter; _transport = transport; _sessionId = sessionId;
+    }
+
+    /**Get protocol method name such as <pre>"Page.navigate"</pre>.*/
+    protected abstract String getMethodName();
+
+    /**Get session Id of target that this method is sent to.
+     @return null if method is sent to the connected target itself. */
+    @Nullable final String getSessionId() { return _sessionId; }
+
+    /**Check and convert parameter object into json string and send to browser with connection's
+     default timeout.
      @param resultMetaClass meta class of method's result type.
      @param failResultFactory factory method that will create a failed result instance with given an
         error message.
-     @return future instance that waits browser's reply.
+     @return future instance that waits browser's reply. Cancel it to stop waiting.
      @throws IllegalArgumentException if any of parameter is not valid. */
     protected <T extends ResultBase> CompletableFuture<T> call(
         Class<T> resultMetaClass, Function<String, T> failResultFactory
     ) throws IllegalArgumentException {
-        return CompletableFuture.supplyAsync(() -> {
-            //! Check if all parameters are ok
-            check();
-            //! Get next id from event center
-            final long id = _evt.getNextMethodId();
-            //! Generate raw json command string
-            /// TODO: use TLS to reuse string builder instance
-            StringBuilder strBuilder = new StringBuilder();
-            strBuilder.append("{\"id\":").append(id).append(",\"params\":");
-            toJson(strBuilder).append('}');
-            //! Send command
-            if (!_evt.enqueueMethod(id, this))
-                throw new IllegalStateException("Command id " + String.valueOf(id) + " already existed in waiting queue");
-            _ws.send(strBuilder.toString());
-            System.out.println("Send command: " + strBuilder.toString());
-
-            /// Wait response
-            try { _latch.await(); }
-            catch (InterruptedException e) { Thread.currentThread().interrupt(); }
-
-            /// Check success or fail
-            final boolean success = _success;
-            final JsonNode resp = _response;
-            if (_success) {
-                try {
-                    final T result = EventCenter.deserializeJson(resp, resultMetaClass);
-                    result.setId(id);
-                    return result;
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                    return null;
-                }
-            }
-            else {
-                final T result = failResultFactory.apply(resp.asText());
-                result.setId(id);
-                return result;
+        return call(resultMetaClass, failResultFactory, _evt.getDefaultTimeout(), TimeUnit.MILLISECONDS);
+    }
+
+    /**Check and convert parameter object into json string and send to browser.
+     @param resultMetaClass meta class of method's result type.
+     @param failResultFactory factory method that will create a failed result instance with given an
+        error message.
+     @param timeout max duration of waiting browser's reply. Use 0 or negative to indicate never
+        timeout.
+     @param unit unit of timeout.
+     @return future instance that waits browser's reply. It is completed exceptionally with
+        {@link java.util.concurrent.TimeoutException} if browser does not reply in time, or with
+        {@link java.io.IOException} if connection is closed. Cancel it to stop waiting.
+     @throws IllegalArgumentException if any of parameter is not valid. */
+    protected <T extends ResultBase> CompletableFuture<T> call(
+        Class<T> resultMetaClass, Function<String, T> failResultFactory, long timeout, TimeUnit unit
+    ) throws IllegalArgumentException {
+        return call(resultMetaClass, failResultFactory, null, timeout, unit);
+    }
+
+    /**Check and convert parameter object into json string and send to browser with connection's
+     default timeout. {@link BinaryData} fields of result are decoded into given sink.
+     @param resultMetaClass meta class of method's result type.
+     @param failResultFactory factory method that will create a failed result instance with given an
+        error message.
+     @param sink destination of decoded binary data. It is written by the thread that receives browser's
+        reply, and must not be touched until returned future is completed.
+     @return future instance that waits browser's reply. Cancel it to stop waiting.
+     @throws IllegalArgumentException if any of parameter is not valid. */
+    protected <T extends ResultBase> CompletableFuture<T> call(
+        Class<T> resultMetaClass, Function<String, T> failResultFactory, BinarySink sink
+    ) throws IllegalArgumentException {
+        return call(resultMetaClass, failResultFactory, sink, _evt.getDefaultTimeout(), TimeUnit.MILLISECONDS);
+    }
+
+    /**Check and convert parameter object into json string and send to browser.
+     @param resultMetaClass meta class of method's result type.
+     @param failResultFactory factory method that will create a failed result instance with given an
+        error message.
+     @param sink destination of {@link BinaryData} fields of result. Use null to decode them into byte
+        arrays.
+     @param timeout max duration of waiting browser's reply. Use 0 or negative to indicate never
+        timeout.
+     @param unit unit of timeout.
+     @return future instance that waits browser's reply.
+     @throws IllegalArgumentException if any of parameter is not valid.
+     @see #call(Class, Function, long, TimeUnit) */
+    protected <T extends ResultBase> CompletableFuture<T> call(Class<T> resultMetaClass,
+        Function<String, T> failResultFactory, @Nullable BinarySink sink, long timeout, TimeUnit unit
+    ) throws IllegalArgumentException {
+        //! Check if all parameters are ok
+        check();
+        //! Get next id from event center
+        final long id = _evt.getNextMethodId();
+        //! Generate raw json command into buffer owned by this thread
+        final Utf8JsonBuffer buffer = Utf8JsonBuffer.local();
+        toCommandHeader(id, buffer);
+        final int paramsStart = buffer.length();
+        toJson(buffer);
+        final int paramsEnd = buffer.length();
+        buffer.append('}');
+        final ResultCache cache = _evt.getResultCache();
+        String cacheKey = null;
+        long generation = -1;
+        if (cache != null && sink == null && cache.isCached(getMethodName())) {
+            //! Serve from cache by parameters, generation is taken before sending so that any
+            //! invalidation before reply prevents caching it
+            cacheKey = ResultCache.keyOf(_sessionId, getMethodName(), buffer, paramsStart, paramsEnd);
+            generation = cache.generationOf(_sessionId, getMethodName());
+            final ResultBase cached = cache.get(cacheKey, generation);
+            if (cached != null)     return ExecutorBoundFuture.completed(_evt.getExecutor(), resultMetaClass.cast(cached));
+        }
+        else if (cache != null)     cache.onSending(_sessionId, getMethodName());
+        //! Register before sending, so that reply can never arrive earlier than registration
+        final PendingMethod<T> pending = new PendingMethod<>(_evt, id, resultMetaClass, failResultFactory, sink);
+        pending.markSent(this);
+        if (cacheKey != null)   pending.cacheResultIn(cache, cacheKey, generation);
+        final boolean enqueued;
+        try { enqueued = _evt.enqueueMethod(pending, timeout, unit); }
+        catch (IllegalStateException e) {   // Too many methods are waiting
+            pending.completeExceptionally(e);
+            return pending;
+        }
+        if (!enqueued)
+            throw new IllegalStateException("Command id " + String.valueOf(id) + " already existed in waiting queue");
+        //! Queue command in scheduler if enabled, waiting time in queue is included in timeout
+        final CommandScheduler scheduler = _evt.getCommandScheduler();
+        if (scheduler != null)  scheduler.submit(this, pending, buffer, paramsStart, paramsEnd);
+        else                    sendNow(pending, buffer.array(), buffer.length());
+        return pending;
+    }
+
+    /**Send this method again with its original waiting future, such as after reconnected.
+     The future keeps its original deadline, and expires immediately if the deadline is already passed.
+     @return false if fail to send, and the future is completed exceptionally. */
+    final boolean resend(PendingMethod<?> pending) {
+        if (pending.expireIfOverdue())  return false;
+        final Utf8JsonBuffer buffer = Utf8JsonBuffer.local();
+        toCommand(pending.getId(), buffer);
+        try {
+            if (!_evt.enqueueMethod(pending)) {
+                pending.completeExceptionally(new IllegalStateException(
+                    "Command id " + String.valueOf(pending.getId()) + " already existed in waiting queue"));
+                return false;
             }
-        });
+        }
+        catch (IllegalStateException e) {   // Too many methods are waiting
+            pending.completeExceptionally(e);
+            return false;
+        }
+        return sendNow(pending, buffer.array(), buffer.length());
+    }
+
+    /**Write already registered command to transport, and record metrics, tracing events, wire frame,
+     and traffic log of it.
+     @param command serialized command, it is copied or written by transport so it can be reused after
+        this method returns.
+     @return false if fail to send, and the future is removed from waiting table and completed
+        exceptionally. */
+    final boolean sendNow(PendingMethod<?> pending, byte[] command, int length) {
+        try { _transport.sendText(ByteBuffer.wrap(command, 0, length)); }
+        catch (RuntimeException e) {    // e.g. WebsocketNotConnectedException
+            _evt.popMethod(pending.getId());
+            pending.completeExceptionally(e);
+            return false;
+        }
+        _evt.getMetrics().onSent(1, length);
+        _evt.trackDomainMethod(this);
+        Tracing.commandSent(pending.getId(), getMethodName(), _sessionId, length);
+        final WireRecorder recorder = _evt.getWireRecorder();
+        if (recorder != null)   recorder.onSent(command, 0, length);
+        final TrafficLog log = _evt.getTrafficLog();
+        if (log != null)    log.onSent(_sessionId, command, 0, length);
+        return true;
+    }
+
+    /**Check parameters and add this method into a batch, the method is sent when
+     {@link CommandBatch#send()} is called.
+     @param batch batch which is created from the same connection of this method.
+     @param resultMetaClass meta class of method's result type.
+     @param failResultFactory factory method that will create a failed result instance with given an
+        error message.
+     @return future instance that waits browser's reply.
+     @throws IllegalArgumentException if any of parameter is not valid, or batch belongs to another
+        connection.
+     @throws IllegalStateException if batch is already sent. */
+    protected <T extends ResultBase> CompletableFuture<T> call(
+        CommandBatch batch, Class<T> resultMetaClass, Function<String, T> failResultFactory
+    ) throws IllegalArgumentException, IllegalStateException {
+        if (batch.getEventCenter() != _evt)
+            throw new IllegalArgumentException("Batch belongs to another connection");
+        check();
+        return batch.add(this, resultMetaClass, failResultFactory);
+    }
+
+    /**Convert this method into json command with given Id and append into byte buffer.
+     @return byte buffer instance that is given in parameter. */
+    final Utf8JsonBuffer toCommand(long id, Utf8JsonBuffer buffer) {
+        return toJson(toCommandHeader(id, buffer)).append('}');
     }
 
-    /**Let event center set browser's response.*/
-    final void setResponse(boolean success, JsonNode response) {
-        _success = success; _response = response;
+    /**Append json command's fields before parameters object, ending with <pre>"params":</pre>.
+     @return byte buffer instance that is given in parameter. */
+    private Utf8JsonBuffer toCommandHeader(long id, Utf8JsonBuffer buffer) {
+        buffer.appendAscii("{\"id\":").append(id).appendAscii(",\"method\":\"").appendAscii(getMethodName()).append('"');
+        //! Session Id is generated by browser and contains no character needs escaping
+        if (_sessionId != null)     buffer.appendAscii(",\"sessionId\":\"").appendAscii(_sessionId).append('"');
+        return buffer.appendAscii(",\"params\":");
     }
-    /**Get IO waiting latch.*/
-    final CountDownLatch getLatch() { return _latch; }
 }
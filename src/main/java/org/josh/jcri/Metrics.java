@@ -0,0 +1,138 @@
+package org.josh.jcri;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Live metrics recorder of a connection.
+ All counters are {@link LongAdder}s and latencies are recorded into preallocated
+ {@link LatencyHistogram}s, so recording never locks and allocates only when a method or event name
+ is seen the first time. Recording is switched off by system property
+ <pre>org.josh.jcri.metrics=false</pre>, which is a constant so that JIT removes all recording code.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class Metrics implements MetricsMXBean {
+    /**System property name of enabling metrics recording.*/
+    private static final String EnabledPropertyName = "org.josh.jcri.metrics";
+    /**Whether metrics are recorded.*/
+    static final boolean Enabled = !"false".equalsIgnoreCase(System.getProperty(EnabledPropertyName));
+
+    /**Event center which provides gauges.*/
+    private final EventCenter _evt;
+    private final LongAdder _commandsSent = new LongAdder();
+    private final LongAdder _repliesReceived = new LongAdder();
+    private final LongAdder _errorReplies = new LongAdder();
+    private final LongAdder _timeouts = new LongAdder();
+    private final LongAdder _messagesReceived = new LongAdder();
+    private final LongAdder _bytesReceived = new LongAdder();
+    private final LongAdder _bytesSent = new LongAdder();
+    private final LongAdder _eventsReceived = new LongAdder();
+    private final LongAdder _eventsDropped = new LongAdder();
+    /**Latency histograms keyed by method name.*/
+    private final ConcurrentMap<String, LatencyHistogram> _latencies = new ConcurrentHashMap<>();
+    /**Event counters keyed by event method name.*/
+    private final ConcurrentMap<String, LongAdder> _events = new ConcurrentHashMap<>();
+
+    Metrics(EventCenter eventCenter) { _evt = eventCenter; }
+
+    /**Record commands are sent.
+     @param count count of commands.
+     @param bytes total UTF-8 bytes of commands. */
+    void onSent(int count, int bytes) {
+        if (!Enabled)   return;
+        _commandsSent.add(count);
+        _bytesSent.add(bytes);
+    }
+
+    /**Record a message is received.
+     @param length text length of message. */
+    void onMessage(int length) {
+        if (!Enabled)   return;
+        _messagesReceived.increment();
+        _bytesReceived.add(length);
+    }
+
+    /**Record browser replies a method.
+     @param method method name, null if unknown.
+     @param sentNanos {@link System#nanoTime()} when method is sent.
+     @param error whether browser replies an error. */
+    void onReply(@Nullable String method, long sentNanos, boolean error) {
+        if (!Enabled)   return;
+        _repliesReceived.increment();
+        if (error)  _errorReplies.increment();
+        if (method == null)     return;
+        LatencyHistogram histogram = _latencies.get(method);
+        if (histogram == null)  histogram = _latencies.computeIfAbsent(method, k -> new LatencyHistogram());
+        histogram.record(System.nanoTime() - sentNanos);
+    }
+
+    /**Record a method is timed out.*/
+    void onTimeout() {
+        if (Enabled)    _timeouts.increment();
+    }
+
+    /**Record an event is received.*/
+    void onEvent(String method) {
+        if (!Enabled)   return;
+        _eventsReceived.increment();
+        LongAdder counter = _events.get(method);
+        if (counter == null)    counter = _events.computeIfAbsent(method, k -> new LongAdder());
+        counter.increment();
+    }
+
+    /**Record an event is received and dropped without parsing.*/
+    void onEventDropped(String method) {
+        if (!Enabled)   return;
+        onEvent(method);
+        _eventsDropped.increment();
+    }
+
+    /**Take an immutable snapshot of current values.*/
+    MetricsSnapshot snapshot() { return new MetricsSnapshot(this); }
+
+    @Override public long getCommandsSent() { return _commandsSent.sum(); }
+    @Override public long getRepliesReceived() { return _repliesReceived.sum(); }
+    @Override public long getErrorReplies() { return _errorReplies.sum(); }
+    @Override public long getTimeouts() { return _timeouts.sum(); }
+    @Override public int getInFlight() { return _evt.getPendingMethodCount(); }
+    @Override public long getMessagesReceived() { return _messagesReceived.sum(); }
+    @Override public long getBytesReceived() { return _bytesReceived.sum(); }
+    @Override public long getBytesSent() { return _bytesSent.sum(); }
+    @Override public long getEventsReceived() { return _eventsReceived.sum(); }
+    @Override public long getEventsDropped() { return _eventsDropped.sum(); }
+
+    @Override public Map<String, Long> getEventCounts() {
+        final Map<String, Long> counts = new HashMap<>();
+        _events.forEach((method, counter) -> counts.put(method, counter.sum()));
+        return counts;
+    }
+
+    @Override public Map<String, LatencySnapshot> getLatencies() {
+        final Map<String, LatencySnapshot> latencies = new HashMap<>();
+        _latencies.forEach((method, histogram) -> latencies.put(method, histogram.snapshot()));
+        return latencies;
+    }
+
+    @Override public int getQueuedEvents() { return _evt.getQueuedEventCount(); }
+
+    @Override public int getExecutorActiveThreads() {
+        final Executor executor = _evt.getEventRegistry().getExecutor();
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor)executor).getActiveCount() : -1;
+    }
+
+    @Override public int getExecutorPoolSize() {
+        final Executor executor = _evt.getEventRegistry().getExecutor();
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor)executor).getPoolSize() : -1;
+    }
+
+    @Override public int getExecutorQueueSize() {
+        final Executor executor = _evt.getEventRegistry().getExecutor();
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor)executor).getQueue().size() : -1;
+    }
+}
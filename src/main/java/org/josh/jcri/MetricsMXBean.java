@@ -0,0 +1,47 @@
+package org.josh.jcri;
+
+import java.util.Map;
+
+/**Latency and throughput metrics of a connection.
+ Registered as JMX MXBean by {@link JCRI#registerMBean()}, and also readable as an immutable
+ {@link MetricsSnapshot} by {@link JCRI#getMetrics()}. Counters are not recorded if system property
+ <pre>org.josh.jcri.metrics</pre> is <pre>false</pre>, gauges (in flight, queue, and executor) are always
+ available.
+ @author Joshua */
+public interface MetricsMXBean {
+    /**Get count of commands sent to browser.*/
+    long getCommandsSent();
+    /**Get count of replies received, including error replies.*/
+    long getRepliesReceived();
+    /**Get count of error replies.*/
+    long getErrorReplies();
+    /**Get count of methods that browser does not reply in time.*/
+    long getTimeouts();
+    /**Get count of methods waiting browser's reply.*/
+    int getInFlight();
+    /**Get count of messages received from browser.*/
+    long getMessagesReceived();
+    /**Get received message size. Counted as text length, which equals to UTF-8 bytes for ASCII text
+     (most protocol messages).*/
+    long getBytesReceived();
+    /**Get UTF-8 bytes of sent commands.*/
+    long getBytesSent();
+    /**Get count of events received.*/
+    long getEventsReceived();
+    /**Get count of received events that are dropped without parsing because nobody listens them,
+     which are also counted in {@link #getEventsReceived()}.*/
+    long getEventsDropped();
+    /**Get count of received events keyed by event method name.*/
+    Map<String, Long> getEventCounts();
+    /**Get latency statistics keyed by method name.*/
+    Map<String, LatencySnapshot> getLatencies();
+    /**Get count of events queued in all subscriptions and waiting to be delivered.*/
+    int getQueuedEvents();
+    /**Get count of event executor's threads that are running tasks, -1 if executor is not a
+     {@link java.util.concurrent.ThreadPoolExecutor}.*/
+    int getExecutorActiveThreads();
+    /**Get count of event executor's threads, -1 if unknown.*/
+    int getExecutorPoolSize();
+    /**Get count of tasks waiting in event executor's queue, -1 if unknown.*/
+    int getExecutorQueueSize();
+}
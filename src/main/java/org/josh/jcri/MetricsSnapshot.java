@@ -0,0 +1,77 @@
+package org.josh.jcri;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Immutable snapshot of connection metrics.
+ @see JCRI#getMetrics()
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class MetricsSnapshot implements MetricsMXBean {
+    private final long _commandsSent;
+    private final long _repliesReceived;
+    private final long _errorReplies;
+    private final long _timeouts;
+    private final int _inFlight;
+    private final long _messagesReceived;
+    private final long _bytesReceived;
+    private final long _bytesSent;
+    private final long _eventsReceived;
+    private final long _eventsDropped;
+    private final Map<String, Long> _eventCounts;
+    private final Map<String, LatencySnapshot> _latencies;
+    private final int _queuedEvents;
+    private final int _executorActiveThreads;
+    private final int _executorPoolSize;
+    private final int _executorQueueSize;
+
+    /**Copy current values of given metrics.*/
+    MetricsSnapshot(MetricsMXBean metrics) {
+        _commandsSent = metrics.getCommandsSent();
+        _repliesReceived = metrics.getRepliesReceived();
+        _errorReplies = metrics.getErrorReplies();
+        _timeouts = metrics.getTimeouts();
+        _inFlight = metrics.getInFlight();
+        _messagesReceived = metrics.getMessagesReceived();
+        _bytesReceived = metrics.getBytesReceived();
+        _bytesSent = metrics.getBytesSent();
+        _eventsReceived = metrics.getEventsReceived();
+        _eventsDropped = metrics.getEventsDropped();
+        _eventCounts = Collections.unmodifiableMap(new TreeMap<>(metrics.getEventCounts()));
+        _latencies = Collections.unmodifiableMap(new TreeMap<>(metrics.getLatencies()));
+        _queuedEvents = metrics.getQueuedEvents();
+        _executorActiveThreads = metrics.getExecutorActiveThreads();
+        _executorPoolSize = metrics.getExecutorPoolSize();
+        _executorQueueSize = metrics.getExecutorQueueSize();
+    }
+
+    @Override public long getCommandsSent() { return _commandsSent; }
+    @Override public long getRepliesReceived() { return _repliesReceived; }
+    @Override public long getErrorReplies() { return _errorReplies; }
+    @Override public long getTimeouts() { return _timeouts; }
+    @Override public int getInFlight() { return _inFlight; }
+    @Override public long getMessagesReceived() { return _messagesReceived; }
+    @Override public long getBytesReceived() { return _bytesReceived; }
+    @Override public long getBytesSent() { return _bytesSent; }
+    @Override public long getEventsReceived() { return _eventsReceived; }
+    @Override public long getEventsDropped() { return _eventsDropped; }
+    @Override public Map<String, Long> getEventCounts() { return _eventCounts; }
+    @Override public Map<String, LatencySnapshot> getLatencies() { return _latencies; }
+    @Override public int getQueuedEvents() { return _queuedEvents; }
+    @Override public int getExecutorActiveThreads() { return _executorActiveThreads; }
+    @Override public int getExecutorPoolSize() { return _executorPoolSize; }
+    @Override public int getExecutorQueueSize() { return _executorQueueSize; }
+
+    @Override public String toString() {
+        return "commandsSent=" + _commandsSent + ", repliesReceived=" + _repliesReceived
+            + ", errorReplies=" + _errorReplies + ", timeouts=" + _timeouts + ", inFlight=" + _inFlight
+            + ", messagesReceived=" + _messagesReceived + ", bytesReceived=" + _bytesReceived
+            + ", bytesSent=" + _bytesSent + ", eventsReceived=" + _eventsReceived
+            + ", eventsDropped=" + _eventsDropped + ", queuedEvents=" + _queuedEvents
+            + ", executor(active=" + _executorActiveThreads
+            + ", pool=" + _executorPoolSize + ", queue=" + _executorQueueSize + ")"
+            + ", latencies=" + _latencies + ", eventCounts=" + _eventCounts;
+    }
+}
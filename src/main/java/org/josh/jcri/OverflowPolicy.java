@@ -0,0 +1,19 @@
+package org.josh.jcri;
+
+/**Behavior of event subscription when its bounded queue is full.
+ @see Subscription
+ @author Joshua */
+public enum OverflowPolicy {
+    /**Block the receiving thread until listener takes an event from queue.
+     Note that command replies of the same connection are also blocked, so listener must never wait a
+     method reply of the same connection. Only used when given explicitly. */
+    BLOCK,
+    /**Drop the oldest queued event to make room for new event. Default policy of listeners.*/
+    DROP_OLDEST,
+    /**Drop the new event.*/
+    DROP_NEWEST,
+    /**Replace queued event with new event of the same coalescing key, such as only keep the latest
+     screencast frame. If queue is full and no event with the same key is queued, the oldest queued
+     event is dropped. */
+    COALESCE
+}
@@ -0,0 +1,196 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Future of a sent protocol method which is waiting browser's reply.
+ Instance of this class is stored in {@link EventCenter}'s waiting table and is completed directly by
+ the thread that receives browser's reply, so no thread is blocked while the command is in flight.
+ Asynchronous stages without executor run in the connection's executor.
+ <p>Cancelling this future or expiring it by {@link TimeoutWheel} removes it from waiting table.</p>
+ @param <T> type of method's result.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+class PendingMethod<T extends ResultBase> extends ExecutorBoundFuture<T> {
+    /**Event center which holds this method in waiting table.*/
+    private final EventCenter _evt;
+    /**Method Id.*/
+    private final long _id;
+    /**Meta class of method's result type.*/
+    private final Class<T> _resultMetaClass;
+    /**Factory method to create a failed result instance with given error message.*/
+    private final Function<String, T> _failResultFactory;
+    /**Destination of result's binary fields, null to decode them into byte arrays.*/
+    @Nullable private final BinarySink _sink;
+    /**Method which creates this future, used for sending it again after reconnected.*/
+    @Nullable private MethodBase _source;
+    /**{@link System#nanoTime()} when method is sent, only used by metrics and tracing.*/
+    private long _sentNanos;
+    /**Whether this method expires at {@link #_deadlineNanos}.*/
+    private boolean _expiring = false;
+    /**{@link System#nanoTime()} when this method expires, kept when method is sent again.*/
+    private long _deadlineNanos;
+    /**Cache which stores successful result before completing, null if result is not cached.*/
+    @Nullable private ResultCache _cache;
+    @Nullable private String _cacheKey;
+    /**Generation of cached results when method is sent.*/
+    private long _cacheGeneration;
+
+    /**Create a pending method instance.
+     @param eventCenter event center which holds this method in waiting table.
+     @param id method Id.
+     @param resultMetaClass meta class of method's result type.
+     @param failResultFactory factory method that will create a failed result instance with given an
+        error message. */
+    PendingMethod(EventCenter eventCenter, long id, Class<T> resultMetaClass, Function<String, T> failResultFactory) {
+        this(eventCenter, id, resultMetaClass, failResultFactory, null);
+    }
+
+    /**Create a pending method instance whose result's {@link BinaryData} fields are decoded into sink.
+     @param sink destination of decoded binary data. Use null to decode into byte arrays. */
+    PendingMethod(EventCenter eventCenter, long id, Class<T> resultMetaClass, Function<String, T> failResultFactory,
+        @Nullable BinarySink sink
+    ) {
+        super(eventCenter.getExecutor());
+        _evt = eventCenter;
+        _id = id;
+        _resultMetaClass = resultMetaClass;
+        _failResultFactory = failResultFactory;
+        _sink = sink;
+    }
+
+    /**Get method Id.*/
+    final long getId() { return _id; }
+
+    /**Mark method which creates this future and its sending time for latency metrics and tracing.
+     Must be called before method is put into waiting table. */
+    final void markSent(MethodBase source) {
+        _source = source;
+        if (Metrics.Enabled || Tracing.JfrEnabled)  _sentNanos = System.nanoTime();
+    }
+
+    /**Set deadline of waiting browser's reply. Must be called before method is put into waiting table.
+     @param timeout max duration of waiting browser's reply, must be positive. */
+    final void setDeadline(long timeout, TimeUnit unit) {
+        _deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        _expiring = true;
+    }
+
+    /**Get if this method expires at a deadline.*/
+    final boolean isExpiring() { return _expiring; }
+    /**Get {@link System#nanoTime()} when this method expires, only valid if {@link #isExpiring()}.*/
+    final long getDeadlineNanos() { return _deadlineNanos; }
+
+    /**Get nanoseconds until this method expires.
+     @return {@link Long#MAX_VALUE} if never expires, 0 or negative if already overdue. */
+    final long getRemainingNanos() { return _expiring ? _deadlineNanos - System.nanoTime() : Long.MAX_VALUE; }
+
+    /**Get if this method is in waiting table of its connection, it is not after connection is lost.*/
+    final boolean isWaiting() { return _evt.isMethodWaiting(this); }
+
+    /**Store successful result into cache before completing this future, so that callers which see the
+     result always find it in cache. Must be called before method is put into waiting table.
+     @param generation generation of cached results when method is sent. */
+    final void cacheResultIn(ResultCache cache, String key, long generation) {
+        _cache = cache; _cacheKey = key; _cacheGeneration = generation;
+    }
+
+    /**Get method which creates this future.
+     @return null if not marked by {@link #markSent(MethodBase)}. */
+    @Nullable final MethodBase getSource() { return _source; }
+
+    /**Get method name.
+     @return null if not marked by {@link #markSent(MethodBase)}. */
+    @Nullable final String getMethodName() { return _source != null ? _source.getMethodName() : null; }
+
+    /**Get elapsed nanoseconds since method is sent, 0 if not marked by {@link #markSent(MethodBase)}.*/
+    final long getElapsedNanos() { return _source != null ? System.nanoTime() - _sentNanos : 0; }
+
+    /**Complete this method with <pre>result</pre> field replied by browser.
+     @param parser parser which current token is the start of <pre>result</pre> value. Result value is
+        bound directly from parser with the cached object reader of result type. */
+    final void setResult(JsonParser parser) {
+        try {
+            ObjectReader reader = EventCenter.readerFor(_resultMetaClass);
+            if (_sink != null)  reader = reader.withAttribute(BinarySink.class, _sink);
+            final T value = reader.readValue(parser);
+            value.setId(_id);
+            _evt.getMetrics().onReply(getMethodName(), _sentNanos, false);
+            if (_cache != null && _cacheKey != null && _source != null)
+                _cache.put(_cacheKey, _source.getSessionId(), _source.getMethodName(), _cacheGeneration, value);
+            complete(value);
+        }
+        catch (IOException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    /**Complete this method with <pre>error</pre> field replied by browser.*/
+    final void setError(JsonNode error) {
+        //! Browser replies error as {"code": int, "message": string, "data": string}
+        setError(error.has("message") ? error.get("message").asText() : error.toString());
+    }
+
+    /**Complete this method with a failed result of given error message.*/
+    final void setError(String message) {
+        final T value = _failResultFactory.apply(message);
+        value.setId(_id);
+        _evt.getMetrics().onReply(getMethodName(), _sentNanos, true);
+        complete(value);
+    }
+
+    /**Replace this queued method by a newer one which is sent instead, such as coalesced mouse moves.
+     This method is removed from waiting table, and is completed with the result of successor.
+     @param successor future of the same protocol method. */
+    @SuppressWarnings("unchecked")
+    final void supersede(CompletableFuture<? extends ResultBase> successor) {
+        if (_evt.popMethod(_id) != this)    return;
+        successor.whenComplete((result, e) -> {
+            if (e != null)  completeExceptionally(e);
+            else            complete((T)result);
+        });
+    }
+
+    /**Fail this method because browser does not reply in time.
+     Future is completed in connection's executor, so dependent stages never run on the timer thread
+     which is shared by all connections. */
+    final void expire() {
+        if (_evt.popMethod(_id) != this)    return;
+        timeOut();
+    }
+
+    /**Fail this method if its deadline is passed, such as while it is kept out of waiting table during
+     reconnecting, where timer wheel does not expire it.
+     @return true if method is overdue and failed. */
+    final boolean expireIfOverdue() {
+        if (getRemainingNanos() > 0)    return false;
+        timeOut();
+        return true;
+    }
+
+    /**Complete this method with {@link TimeoutException} in connection's executor.*/
+    private void timeOut() {
+        _evt.getMetrics().onTimeout();
+        final TimeoutException timeout = new TimeoutException("Method " + String.valueOf(_id) + " timed out");
+        try { _evt.getExecutor().execute(() -> completeExceptionally(timeout)); }
+        catch (RejectedExecutionException e) {  // e.g. executor is shutdown
+            completeExceptionally(timeout);
+        }
+    }
+
+    /**Cancel this method and remove it from waiting table. Browser's reply is ignored.*/
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+        final boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled)  _evt.popMethod(_id);
+        return cancelled;
+    }
+}
@@ -0,0 +1,188 @@
+package org.josh.jcri;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Lock-free table of methods which are waiting browser's reply, keyed by method Id.
+ Method Id is generated by a monotonic counter, so methods are stored in a power of 2 ring of slots
+ indexed by <pre>id &amp; mask</pre>: putting and removing a method is a single CAS without boxing Id
+ or allocating map node.
+ <p>A slot is occupied when an older method whose Id has the same index is still waiting. If ring is
+ at least half full, it grows to double size. Otherwise the older method is a straggler (such as a
+ slow method among many fast methods), and it is moved into a small overflow map so that it never
+ blocks its slot. Once count of waiting methods reaches max capacity, putting is rejected with
+ {@link IllegalStateException}. Growing and moving are rare and serialized by a lock, other threads
+ touching a moved slot spin until new ring is published.</p>
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class PendingTable {
+    /**Marker of slot which is already moved to new ring.*/
+    private static final Object Moved = new Object();
+
+    /**Current ring of slots, each slot is null, {@link #Moved}, or a {@link PendingMethod}.*/
+    private volatile AtomicReferenceArray<Object> _slots;
+    /**Max size of ring.*/
+    private final int _maxCapacity;
+    /**Count of methods in table.*/
+    private final LongAdder _size = new LongAdder();
+    /**Straggler methods moved out of ring.*/
+    private final Map<Long, PendingMethod<?>> _overflow = new ConcurrentHashMap<>();
+
+    /**Create table.
+     @param initialCapacity initial ring size, rounded up to power of 2.
+     @param maxCapacity max ring size, rounded up to power of 2. */
+    PendingTable(int initialCapacity, int maxCapacity) {
+        final int initial = roundUp(Math.max(initialCapacity, 2));
+        _maxCapacity = Math.max(roundUp(maxCapacity), initial);
+        _slots = new AtomicReferenceArray<>(initial);
+    }
+
+    /**Round up to power of 2.*/
+    private static int roundUp(int value) {
+        int size = 1;
+        while (size < value && size < (1 << 30))    size <<= 1;
+        return size;
+    }
+
+    /**Get count of methods in table.*/
+    int size() { return _size.intValue(); }
+    /**Get current ring size.*/
+    int capacity() { return _slots.length(); }
+
+    /**Put a method into table.
+     @return false if method with the same Id is already in table.
+     @throws IllegalStateException if table is full and reaches max capacity. */
+    boolean put(PendingMethod<?> method) throws IllegalStateException {
+        final long id = method.getId();
+        //! Moved straggler is not in its slot any more
+        if (!_overflow.isEmpty() && _overflow.containsKey(id))  return false;
+        for (;;) {
+            final AtomicReferenceArray<Object> slots = _slots;
+            final int index = (int)id & (slots.length() - 1);
+            final Object current = slots.get(index);
+            if (current == null) {
+                if (slots.compareAndSet(index, null, method)) {
+                    _size.increment();
+                    return true;
+                }
+            }
+            else if (current == Moved)
+                Thread.yield();
+            else if (((PendingMethod<?>)current).getId() == id)
+                return false;
+            else if (putCollided(slots, index, (PendingMethod<?>)current, method))
+                return true;
+        }
+    }
+
+    /**Put a method whose slot is occupied by an older method.
+     @return true if method is put, false if caller should retry.
+     @throws IllegalStateException if table reaches max capacity. */
+    private synchronized boolean putCollided(
+        AtomicReferenceArray<Object> slots, int index, PendingMethod<?> older, PendingMethod<?> method
+    ) throws IllegalStateException {
+        if (_slots != slots || slots.get(index) != older)   return false;   // Changed, just retry
+        final int size = size();
+        if (size >= _maxCapacity)
+            throw new IllegalStateException("Too many methods are waiting browser's reply: " + size);
+        if (size >= (slots.length() >> 1) && slots.length() < _maxCapacity) {
+            grow(slots);
+            return false;
+        }
+        //! Move older method to overflow map before taking its slot, so it is always found by remove()
+        _overflow.put(older.getId(), older);
+        if (slots.compareAndSet(index, older, method)) {
+            _size.increment();
+            return true;
+        }
+        //! Older method is removed concurrently (only this locked method replaces a non-null slot)
+        _overflow.remove(older.getId(), older);
+        return false;
+    }
+
+    /**Get method in table.
+     @return null if not found. */
+    @Nullable PendingMethod<?> get(long id) {
+        for (;;) {
+            final AtomicReferenceArray<Object> slots = _slots;
+            final Object current = slots.get((int)id & (slots.length() - 1));
+            if (current == Moved) {
+                Thread.yield();
+                continue;
+            }
+            if (current != null && ((PendingMethod<?>)current).getId() == id)   return (PendingMethod<?>)current;
+            return _overflow.isEmpty() ? null : _overflow.get(id);
+        }
+    }
+
+    /**Remove method from table.
+     @return removed method, or null if not found. */
+    @Nullable PendingMethod<?> remove(long id) {
+        for (;;) {
+            final AtomicReferenceArray<Object> slots = _slots;
+            final int index = (int)id & (slots.length() - 1);
+            final Object current = slots.get(index);
+            if (current == Moved) {
+                Thread.yield();
+                continue;
+            }
+            if (current == null || ((PendingMethod<?>)current).getId() != id) {
+                if (_overflow.isEmpty())    return null;
+                final PendingMethod<?> method = _overflow.remove(id);
+                if (method != null)     _size.decrement();
+                return method;
+            }
+            if (slots.compareAndSet(index, current, null)) {
+                _size.decrement();
+                return (PendingMethod<?>)current;
+            }
+        }
+    }
+
+    /**Remove all methods from table.
+     @param consumer callback of each removed method. */
+    void drain(Consumer<PendingMethod<?>> consumer) {
+        AtomicReferenceArray<Object> slots;
+        do {
+            slots = _slots;
+            for (int i = 0; i < slots.length(); ++i) {
+                final Object current = slots.get(i);
+                if (current == null || current == Moved)    continue;
+                final PendingMethod<?> method = remove(((PendingMethod<?>)current).getId());
+                if (method != null)     consumer.accept(method);
+            }
+        } while (slots != _slots);
+        for (Long id : _overflow.keySet()) {
+            final PendingMethod<?> method = remove(id);
+            if (method != null)     consumer.accept(method);
+        }
+    }
+
+    /**Double ring size, and move all methods into new ring.
+     Caller must hold lock of this table.
+     @param slots current ring. */
+    private void grow(AtomicReferenceArray<Object> slots) {
+        final AtomicReferenceArray<Object> next = new AtomicReferenceArray<>(slots.length() << 1);
+        final int mask = next.length() - 1;
+        for (int i = 0; i < slots.length(); ++i) {
+            for (;;) {
+                final Object current = slots.get(i);
+                if (current == null) {
+                    if (slots.compareAndSet(i, null, Moved))    break;
+                    continue;
+                }
+                //! New ring is not published yet, only this thread touches it
+                final int index = (int)((PendingMethod<?>)current).getId() & mask;
+                next.set(index, current);
+                if (slots.compareAndSet(i, current, Moved))     break;
+                next.set(index, null);      // Removed concurrently
+            }
+        }
+        _slots = next;
+    }
+}
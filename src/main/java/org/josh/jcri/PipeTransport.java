@@ -0,0 +1,265 @@
+package org.josh.jcri;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Transport over a pair of pipes, used by browser launched with <pre>--remote-debugging-pipe</pre>.
+ Browser reads commands from its file descriptor 3 and writes replies and events to file descriptor 4,
+ each message is a json text terminated by a NUL byte. Compared with web socket there is no TCP
+ loopback, no frame header and masking, and no extra sending thread: commands are written directly by
+ calling thread, and a single reader thread splits received bytes by NUL into messages.
+ <p>Pipe can not be reconnected, {@link #canReconnect()} and {@link #reconnectBlocking()} always
+ return false, so reconnect policy of connection does not apply.</p>
+ @see JCRI#launchWithPipe(java.util.List, java.util.concurrent.ExecutorService)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class PipeTransport implements Transport {
+    /**Size of reading buffer.*/
+    private static final int ReadBufferSize = 64 * 1024;
+    /**Buffer of message which spans multiple reads larger than this size is discarded after message is
+     received, so that a huge screenshot does not hold memory forever.*/
+    private static final int MaxPendingCapacity = 1 << 20;
+    /**Message separator.*/
+    private static final byte Separator = 0;
+    /**Close code when pipe is closed by this side, same as web socket normal closure.*/
+    private static final int NormalClosure = 1000;
+    /**Close code when pipe is closed by browser, same as web socket abnormal closure.*/
+    private static final int AbnormalClosure = 1006;
+
+    /**Channel of browser's output (file descriptor 4).*/
+    private final ReadableByteChannel _in;
+    /**Channel of browser's input (file descriptor 3).*/
+    private final WritableByteChannel _out;
+    /**Browser process which is destroyed when closed, null if process is not owned.*/
+    @Nullable private final Process _process;
+    private final String _endpoint;
+    @Nullable private final Consumer<String> _messageHandler;
+    @Nullable private final Consumer<Exception> _errorHandler;
+    @Nullable private final Consumer<Integer> _closeHandler;
+    /**Lock of writing, so that messages of concurrent senders never interleave.*/
+    private final Object _writeLock = new Object();
+    @Nullable private volatile Thread _reader;
+    private volatile boolean _open = false;
+    private volatile boolean _closing = false;
+    private volatile boolean _closed = false;
+
+    /**Create pipe transport.
+     @param in channel of browser's output (file descriptor 4).
+     @param out channel of browser's input (file descriptor 3).
+     @param process browser process which is destroyed when transport is closed, null if not owned.
+     @param onMessageHandler callback function when message received.
+     @param onErrorHandler callback function when reading or writing fails.
+     @param onCloseHandler callback function when pipe is closed. */
+    PipeTransport(ReadableByteChannel in, WritableByteChannel out, @Nullable Process process,
+        @Nullable Consumer<String> onMessageHandler, @Nullable Consumer<Exception> onErrorHandler,
+        @Nullable Consumer<Integer> onCloseHandler
+    ) {
+        _in = in; _out = out; _process = process;
+        _endpoint = "pipe:" + (process != null ? process.toString() : in.toString());
+        _messageHandler = onMessageHandler; _errorHandler = onErrorHandler; _closeHandler = onCloseHandler;
+    }
+
+    /**Wrap output stream, such as standard input of browser process, into a gathering channel.
+     Process streams are buffered, so each write is flushed after all given buffers are written.*/
+    static GatheringByteChannel channelOf(OutputStream stream) { return new StreamChannel(stream); }
+
+    @Override public void sendText(ByteBuffer utf8Text) { sendText(Collections.singletonList(utf8Text)); }
+
+    @Override public void sendText(Collection<ByteBuffer> utf8Texts) {
+        if (!_open)     throw new IllegalStateException("Pipe is not opened");
+        //! Each message is followed by a separator, write all of them in a single gathering write if possible
+        final ByteBuffer[] buffers = new ByteBuffer[utf8Texts.size() * 2];
+        int i = 0;
+        for (ByteBuffer text : utf8Texts) {
+            buffers[i++] = text;
+            buffers[i++] = ByteBuffer.wrap(new byte[] { Separator });
+        }
+        try {
+            synchronized (_writeLock) {
+                if (_out instanceof GatheringByteChannel) {
+                    final GatheringByteChannel out = (GatheringByteChannel)_out;
+                    while (buffers[buffers.length - 1].hasRemaining())  out.write(buffers);
+                }
+                else {
+                    for (ByteBuffer buffer : buffers)
+                        while (buffer.hasRemaining())   _out.write(buffer);
+                }
+            }
+        }
+        catch (IOException e) {
+            if (_errorHandler != null)  _errorHandler.accept(e);
+            throw new IllegalStateException("Fail to write pipe", e);
+        }
+    }
+
+    /**Start reader thread. Pipe is opened once browser process starts, so this never waits.*/
+    @Override public synchronized boolean connectBlocking() {
+        if (_closed || _closing)    return false;
+        if (_reader != null)        return _open;
+        _open = true;
+        final Thread reader = new Thread(this::read, "jcri-pipe-reader");
+        reader.setDaemon(true);
+        _reader = reader;
+        reader.start();
+        return true;
+    }
+
+    @Override public boolean canReconnect() { return false; }
+    @Override public boolean reconnectBlocking() { return false; }
+
+    @Override public void closeBlocking() throws InterruptedException {
+        close();
+        final Thread reader = _reader;
+        if (reader != null && reader != Thread.currentThread())     reader.join();
+        if (_process != null && !_process.waitFor(5, TimeUnit.SECONDS))     _process.destroyForcibly();
+    }
+
+    /**Close browser's input so browser exits, and stop reading.*/
+    @Override public void close() {
+        synchronized (this) {
+            if (_closing || _closed)    return;
+            _closing = true;
+        }
+        try { _out.close(); }
+        catch (IOException e) {
+            // Do nothing, browser may already exit
+        }
+        if (_process != null)   _process.destroy();
+        if (_reader == null) {
+            try { _in.close(); }
+            catch (IOException e) {
+                // Do nothing, just close
+            }
+            onClosed(NormalClosure);
+        }
+    }
+
+    @Override public boolean isOpen() { return _open; }
+    @Override public boolean isClosing() { return _closing && !_closed; }
+    @Override public boolean isClosed() { return _closed; }
+    @Override public String getEndpoint() { return _endpoint; }
+
+    /**Read messages until browser closes its output.*/
+    private void read() {
+        final ByteBuffer buffer = ByteBuffer.allocate(ReadBufferSize);
+        //! Bytes of message which spans multiple reads
+        byte[] pending = new byte[ReadBufferSize];
+        int pendingLength = 0;
+        try {
+            while (_in.read(buffer) >= 0) {
+                final byte[] bytes = buffer.array();
+                final int end = buffer.position();
+                int start = 0;
+                for (int i = 0; i < end; ++i) {
+                    if (bytes[i] != Separator)  continue;
+                    if (pendingLength == 0)
+                        onMessage(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                    else {
+                        pending = append(pending, pendingLength, bytes, start, i - start);
+                        onMessage(new String(pending, 0, pendingLength + i - start, StandardCharsets.UTF_8));
+                        pendingLength = 0;
+                        if (pending.length > MaxPendingCapacity)    pending = new byte[ReadBufferSize];
+                    }
+                    start = i + 1;
+                }
+                if (start < end) {
+                    pending = append(pending, pendingLength, bytes, start, end - start);
+                    pendingLength += end - start;
+                }
+                buffer.clear();
+            }
+        }
+        catch (ClosedChannelException e) {
+            // Closed by close()
+        }
+        catch (IOException e) {
+            if (!_closing && _errorHandler != null)     _errorHandler.accept(e);
+        }
+        try { _in.close(); }
+        catch (IOException e) {
+            // Do nothing, just close
+        }
+        onClosed(_closing ? NormalClosure : AbnormalClosure);
+    }
+
+    /**Append bytes after given length of array, grow array if needed.
+     @return array which contains appended bytes. */
+    private static byte[] append(byte[] array, int length, byte[] bytes, int offset, int count) {
+        if (length + count > array.length)
+            array = Arrays.copyOf(array, Math.max(length + count, array.length << 1));
+        System.arraycopy(bytes, offset, array, length, count);
+        return array;
+    }
+
+    private void onMessage(String message) {
+        if (_messageHandler == null)    return;
+        try { _messageHandler.accept(message); }
+        catch (RuntimeException e) { e.printStackTrace(); }
+    }
+
+    /**Gathering channel over output stream which flushes each write.*/
+    private static final class StreamChannel implements GatheringByteChannel {
+        private final OutputStream _stream;
+        private volatile boolean _open = true;
+
+        private StreamChannel(OutputStream stream) { _stream = stream; }
+
+        @Override public int write(ByteBuffer src) throws IOException {
+            final int count = writeUnflushed(src);
+            _stream.flush();
+            return count;
+        }
+
+        @Override public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long count = 0;
+            for (int i = offset; i < offset + length; ++i)  count += writeUnflushed(srcs[i]);
+            _stream.flush();
+            return count;
+        }
+
+        @Override public long write(ByteBuffer[] srcs) throws IOException { return write(srcs, 0, srcs.length); }
+
+        private int writeUnflushed(ByteBuffer src) throws IOException {
+            if (!_open)     throw new ClosedChannelException();
+            final int count = src.remaining();
+            if (src.hasArray())
+                _stream.write(src.array(), src.arrayOffset() + src.position(), count);
+            else {
+                final byte[] bytes = new byte[count];
+                src.duplicate().get(bytes);
+                _stream.write(bytes);
+            }
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override public boolean isOpen() { return _open; }
+
+        @Override public void close() throws IOException {
+            _open = false;
+            _stream.close();
+        }
+    }
+
+    private void onClosed(int code) {
+        synchronized (this) {
+            if (_closed)    return;
+            _open = false;
+            _closed = true;
+        }
+        if (_closeHandler != null)  _closeHandler.accept(code);
+    }
+}
@@ -0,0 +1,23 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**Result of method <pre>Page.printToPDF</pre>.
+ @author Joshua */
+public final class PrintToPdfResult extends ResultBase {
+    /**Decoded PDF data, empty if PDF is returned as stream.*/
+    private final BinaryData data;
+    /**Stream handle of PDF data, null if PDF is returned in data.*/
+    private final String stream;
+
+    @JsonCreator PrintToPdfResult(@JsonProperty("data") BinaryData data, @JsonProperty("stream") String stream) {
+        this.data = data; this.stream = stream;
+    }
+    PrintToPdfResult(FailedResult failedResult) { super(failedResult); data = null; stream = null; }
+
+    /**Get decoded PDF data, null if method is failed.*/
+    public BinaryData getData() { return data; }
+    /**Get stream handle for reading PDF by <pre>IO.read</pre>, null if not requested.*/
+    public String getStream() { return stream; }
+}
@@ -0,0 +1,37 @@
+package org.josh.jcri;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Protocol method with already serialized parameters.
+ This is used internally for sending methods which have no generated domain class.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class RawMethod extends MethodBase {
+    /**Protocol method name.*/
+    private final String _method;
+    /**Json formatted parameters object.*/
+    private final String _params;
+
+    /**Create raw method.
+     @param sessionId session Id of attached target, or null for the connected target itself.
+     @param method protocol method name such as <pre>"Target.attachToTarget"</pre>.
+     @param params json formatted parameters object. */
+    RawMethod(EventCenter eventCenter, Transport transport, @Nullable String sessionId, String method, String params) {
+        super(eventCenter, transport, sessionId);
+        _method = method; _params = params;
+    }
+
+    @Override protected String getMethodName() { return _method; }
+    @Override public void check() { }
+    @Override public StringBuilder toJson(StringBuilder strBuilder) { return strBuilder.append(_params); }
+    @Override public Utf8JsonBuffer toJson(Utf8JsonBuffer buffer) { return buffer.appendUtf8(_params); }
+
+    /**Send this method.
+     @see MethodBase#call(Class, Function) */
+    <T extends ResultBase> CompletableFuture<T> send(Class<T> resultMetaClass, Function<String, T> failResultFactory) {
+        return call(resultMetaClass, failResultFactory);
+    }
+}
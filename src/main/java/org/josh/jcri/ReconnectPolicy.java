@@ -0,0 +1,93 @@
+package org.josh.jcri;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Behavior of reconnecting when connection to browser is lost unexpectedly.
+ Attempts are delayed by exponential backoff with random jitter. After reconnected, domains that were
+ enabled by <pre>*.enable</pre> methods are enabled again. Methods that were waiting browser's reply
+ are failed with {@link java.io.IOException} immediately, unless they are idempotent and retrying is
+ enabled by {@link #retryIdempotent(Predicate)}, in which case they are sent again after reconnected
+ and keep their original deadline. A retried method whose deadline passes while reconnecting fails
+ with {@link java.util.concurrent.TimeoutException}.
+ <p>Methods called while reconnecting fail fast because connection is not opened. Attached target
+ sessions are detached by browser when connection is lost, they are removed and must be attached
+ again.</p>
+ @see JCRI#setReconnectPolicy(ReconnectPolicy)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class ReconnectPolicy {
+    /**Default idempotent methods: <pre>Domain.getXxx</pre>, <pre>Domain.enable</pre>, and
+     <pre>Domain.disable</pre>.*/
+    public static final Predicate<String> DefaultIdempotentMethods = method -> {
+        final String name = method.substring(method.lastIndexOf('.') + 1);
+        return name.startsWith("get") || name.equals("enable") || name.equals("disable");
+    };
+
+    private final long _initialDelay;
+    private final long _maxDelay;
+    private final double _jitter;
+    private final int _maxAttempts;
+    /**Predicate of method name which can be sent again, null to fail all waiting methods.*/
+    @Nullable private final Predicate<String> _idempotent;
+
+    /**Create policy which fails all waiting methods when connection is lost.
+     @param initialDelay delay before the first attempt.
+     @param maxDelay max delay between attempts, delay is doubled after each failed attempt.
+     @param unit unit of delays.
+     @param jitter ratio of delay randomly reduced, between 0 and 1, to avoid all clients reconnecting
+        at the same time.
+     @param maxAttempts max count of attempts, use 0 or negative for unlimited.
+     @throws IllegalArgumentException if delay is negative or jitter is not between 0 and 1. */
+    public ReconnectPolicy(long initialDelay, long maxDelay, TimeUnit unit, double jitter, int maxAttempts)
+        throws IllegalArgumentException {
+        this(unit.toMillis(initialDelay), unit.toMillis(maxDelay), jitter, maxAttempts, null);
+    }
+
+    private ReconnectPolicy(long initialDelay, long maxDelay, double jitter, int maxAttempts,
+        @Nullable Predicate<String> idempotent
+    ) throws IllegalArgumentException {
+        if (initialDelay < 0 || maxDelay < 0)
+            throw new IllegalArgumentException("Delay must not be negative");
+        if (!(jitter >= 0 && jitter <= 1))
+            throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+        _initialDelay = initialDelay; _maxDelay = Math.max(maxDelay, initialDelay);
+        _jitter = jitter; _maxAttempts = maxAttempts; _idempotent = idempotent;
+    }
+
+    /**Create a copy of this policy which sends idempotent waiting methods again after reconnected.
+     @param idempotentMethods predicate of method name, such as {@link #DefaultIdempotentMethods}. */
+    public ReconnectPolicy retryIdempotent(Predicate<String> idempotentMethods) {
+        return new ReconnectPolicy(_initialDelay, _maxDelay, _jitter, _maxAttempts, idempotentMethods);
+    }
+
+    /**Get delay before the first attempt in millisecond.*/
+    public long getInitialDelay() { return _initialDelay; }
+    /**Get max delay between attempts in millisecond.*/
+    public long getMaxDelay() { return _maxDelay; }
+    /**Get ratio of delay randomly reduced.*/
+    public double getJitter() { return _jitter; }
+    /**Get max count of attempts, 0 or negative means unlimited.*/
+    public int getMaxAttempts() { return _maxAttempts; }
+
+    /**Get if another attempt is allowed.
+     @param attempt count of failed attempts. */
+    boolean canAttempt(int attempt) { return _maxAttempts <= 0 || attempt < _maxAttempts; }
+
+    /**Get delay before given attempt in millisecond.
+     @param attempt count of failed attempts. */
+    long delayOf(int attempt) {
+        final long delay = attempt >= 62 || (_initialDelay << attempt) >>> attempt != _initialDelay ?
+            _maxDelay : Math.min(_initialDelay << attempt, _maxDelay);
+        return delay - (long)(delay * _jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**Get if given waiting method is sent again after reconnected.*/
+    boolean isRetryable(PendingMethod<?> method) {
+        final String name = method.getMethodName();
+        return _idempotent != null && name != null && method.getSource() != null && _idempotent.test(name);
+    }
+}
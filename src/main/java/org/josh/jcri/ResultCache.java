@@ -0,0 +1,290 @@
+package org.josh.jcri;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Opt-in cache of results of idempotent query methods, such as <pre>DOM.getDocument</pre>.
+ Results are keyed by session, method name, and serialized parameters, and the least recently used
+ results are evicted when cache is full. A cached method is registered by
+ {@link #cache(String, Collection, Collection)} with events which invalidate its results, such as
+ <pre>DOM.documentUpdated</pre>, and domains which must be enabled so that browser sends these events.
+ <p>To never serve stale results:</p>
+ <ul>
+ <li>Results of a method are only cached and served after its required domains are enabled by
+    <pre>Domain.enable</pre> through this connection, and are invalidated when a domain is disabled.</li>
+ <li>Any sent method which is not read-only (see {@link #setReadOnlyMethods(Predicate)}), such as
+    <pre>Runtime.evaluate</pre> or <pre>DOM.setAttributeValue</pre>, invalidates all results of its
+    session.</li>
+ <li>Invalidating events are applied before they are delivered to listeners.</li>
+ <li>Each session and method has a generation counter which is increased when invalidated. A reply is
+    only cached if no invalidation happened between sending method and receiving reply.</li>
+ </ul>
+ <p>Changes made by page scripts without any protocol event are not visible to cache, such as properties
+ changed by timers for <pre>Runtime.getProperties</pre>. Do not cache such methods unless page is
+ paused or static.</p>
+ <p>Cached result instances are shared by all callers and must not be modified. Their method Id is the
+ Id of the method which fetched them.</p>
+ @see JCRI#setResultCache(ResultCache)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class ResultCache {
+    /**Key of the connected target itself in session map.*/
+    private static final String RootSession = "";
+    /**Default read-only methods, which never change browser state.*/
+    public static final Predicate<String> DefaultReadOnlyMethods = method -> {
+        final String name = method.substring(method.lastIndexOf('.') + 1);
+        return name.startsWith("get") || name.startsWith("describe") || name.startsWith("query")
+            || name.startsWith("resolve") || name.equals("enable");
+    };
+
+    private final int _capacity;
+    /**Cached results in access order, guarded by itself.*/
+    private final LinkedHashMap<String, Entry> _entries;
+    /**Rules by cached method name.*/
+    private final Map<String, Rule> _rules = new ConcurrentHashMap<>();
+    /**Invalidated method names by event method name.*/
+    private final Map<String, Set<String>> _eventRules = new ConcurrentHashMap<>();
+    /**Invalidated method names by event domain, for events given as <pre>"Domain.*"</pre>.*/
+    private final Map<String, Set<String>> _domainRules = new ConcurrentHashMap<>();
+    /**State of each session, root session is keyed by empty string.*/
+    private final Map<String, SessionState> _sessions = new ConcurrentHashMap<>();
+    private volatile Predicate<String> _readOnly = DefaultReadOnlyMethods;
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+    private final AtomicLong _invalidationCount = new AtomicLong();
+
+    /**Create an empty cache without cached method.
+     @param capacity max count of cached results.
+     @throws IllegalArgumentException if capacity is not positive. */
+    public ResultCache(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0)  throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        _capacity = capacity;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**Create cache of common query methods: <pre>DOM.getDocument</pre>, <pre>Page.getFrameTree</pre>,
+     <pre>Page.getResourceTree</pre>, and <pre>Runtime.getProperties</pre>. Note that results of
+     <pre>Runtime.getProperties</pre> are stale if page scripts change properties by themselves.
+     @param capacity max count of cached results. */
+    public static ResultCache withDefaults(int capacity) {
+        final List<String> frameEvents = Arrays.asList("Page.frameNavigated", "Page.frameAttached",
+            "Page.frameDetached", "Page.navigatedWithinDocument", "Page.documentOpened");
+        final List<String> resourceEvents = new ArrayList<>(frameEvents);
+        resourceEvents.addAll(Arrays.asList("Network.responseReceived", "Network.loadingFinished"));
+        //! Browser sends DOM events once document is requested, without DOM.enable
+        return new ResultCache(capacity)
+            .cache("DOM.getDocument", Collections.emptyList(), Arrays.asList("DOM.*", "Page.frameNavigated"))
+            .cache("Page.getFrameTree", Collections.singletonList("Page"), frameEvents)
+            .cache("Page.getResourceTree", Arrays.asList("Page", "Network"), resourceEvents)
+            .cache("Runtime.getProperties", Collections.singletonList("Runtime"), Arrays.asList(
+                "Runtime.executionContextDestroyed", "Runtime.executionContextsCleared", "Page.frameNavigated"));
+    }
+
+    /**Cache results of given method.
+     @param method method name such as <pre>"DOM.getDocument"</pre>.
+     @param requiredDomains domains which must be enabled before results are cached, such as
+        <pre>"Page"</pre> for <pre>Page.*</pre> events.
+     @param invalidatingEvents events which invalidate results, such as <pre>"DOM.documentUpdated"</pre>.
+        Use <pre>"Domain.*"</pre> for all events of a domain.
+     @return this cache. */
+    public ResultCache cache(String method, Collection<String> requiredDomains, Collection<String> invalidatingEvents) {
+        _rules.put(method, new Rule(new HashSet<>(requiredDomains)));
+        for (String event : invalidatingEvents) {
+            final boolean wholeDomain = event.endsWith(".*");
+            final Map<String, Set<String>> rules = wholeDomain ? _domainRules : _eventRules;
+            final String key = wholeDomain ? event.substring(0, event.length() - 2) : event;
+            rules.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(method);
+        }
+        return this;
+    }
+
+    /**Set predicate of read-only methods, other sent methods invalidate all results of their session.
+     Cached methods are always read-only. Default is {@link #DefaultReadOnlyMethods}. */
+    public ResultCache setReadOnlyMethods(Predicate<String> readOnlyMethods) {
+        _readOnly = readOnlyMethods;
+        return this;
+    }
+
+    /**Get max count of cached results.*/
+    public int getCapacity() { return _capacity; }
+    /**Get count of cached results, including invalidated ones which are not evicted yet.*/
+    public int size() { synchronized (_entries) { return _entries.size(); } }
+    /**Get count of calls served by cache.*/
+    public long getHitCount() { return _hitCount.get(); }
+    /**Get count of calls of cached methods sent to browser.*/
+    public long getMissCount() { return _missCount.get(); }
+    /**Get count of invalidations by events and methods.*/
+    public long getInvalidationCount() { return _invalidationCount.get(); }
+
+    /**Discard all cached results.*/
+    public void clear() {
+        synchronized (_entries) { _entries.clear(); }
+        for (SessionState session : _sessions.values())     session.invalidateAll();
+    }
+
+    /**Discard all cached results and forget enabled domains, such as when connection is lost.*/
+    final void reset() {
+        for (SessionState session : _sessions.values())     session.invalidateAll();
+        _sessions.clear();
+        synchronized (_entries) { _entries.clear(); }
+    }
+
+    /**Get if results of given method are cached.*/
+    final boolean isCached(String method) { return _rules.containsKey(method); }
+
+    /**Build cache key from serialized parameters in buffer.
+     @param start start offset of parameters.
+     @param end end offset of parameters, exclusive. */
+    static String keyOf(@Nullable String sessionId, String method, Utf8JsonBuffer buffer, int start, int end) {
+        return (sessionId != null ? sessionId : RootSession) + '\u0000' + method + '\u0000'
+            + new String(buffer.array(), start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**Get generation of results of given method, which is given to {@link #put}.
+     @return -1 if required domains are not enabled, then result must not be cached. */
+    final long generationOf(@Nullable String sessionId, String method) {
+        final Rule rule = _rules.get(method);
+        if (rule == null)   return -1;
+        final SessionState session = sessionOf(sessionId);
+        return session.isEnabled(rule.requiredDomains) ? session.generationOf(method) : -1;
+    }
+
+    /**Get valid cached result.
+     @param generation current generation returned by {@link #generationOf}.
+     @return null if not cached or invalidated. */
+    @Nullable final ResultBase get(String key, long generation) {
+        if (generation >= 0) {
+            final Entry entry;
+            synchronized (_entries) { entry = _entries.get(key); }
+            if (entry != null && entry.generation == generation) {
+                _hitCount.incrementAndGet();
+                return entry.result;
+            }
+        }
+        _missCount.incrementAndGet();
+        return null;
+    }
+
+    /**Cache result if not invalidated since its method is sent.
+     @param generation generation when method is sent, returned by {@link #generationOf}. */
+    final void put(String key, @Nullable String sessionId, String method, long generation, ResultBase result) {
+        if (generation < 0 || !result.isSuccess())   return;
+        synchronized (_entries) {
+            //! Check generation in lock, invalidation after this removes entry lazily by generation.
+            //! Session removed or reset since sending is never created again here.
+            final SessionState session = _sessions.get(sessionId != null ? sessionId : RootSession);
+            if (session == null || session.generationOf(method) != generation)    return;
+            _entries.put(key, new Entry(generation, result));
+            if (_entries.size() > _capacity) {
+                final Iterator<Map.Entry<String, Entry>> eldest = _entries.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**Track enabled domains and invalidate results when a method is about to be sent.*/
+    final void onSending(@Nullable String sessionId, String method) {
+        if (_rules.containsKey(method))     return;
+        final int dot = method.lastIndexOf('.');
+        final String name = method.substring(dot + 1);
+        if (name.equals("enable")) {
+            sessionOf(sessionId).setEnabled(method.substring(0, dot), true);
+            return;
+        }
+        final SessionState session = sessionOf(sessionId);
+        //! Events of disabled domain are not sent anymore
+        if (name.equals("disable"))         session.setEnabled(method.substring(0, dot), false);
+        else if (_readOnly.test(method))    return;
+        session.invalidateAll();
+        _invalidationCount.incrementAndGet();
+    }
+
+    /**Invalidate results by received event, must be called before event is delivered to listeners.*/
+    final void onEvent(String event, @Nullable String sessionId) {
+        final Set<String> methods = _eventRules.get(event);
+        final int dot = event.lastIndexOf('.');
+        final Set<String> domainMethods = dot > 0 && !_domainRules.isEmpty() ?
+            _domainRules.get(event.substring(0, dot)) : null;
+        if (methods == null && domainMethods == null)   return;
+        final SessionState session = sessionOf(sessionId);
+        if (methods != null)        for (String method : methods)   session.invalidate(method);
+        if (domainMethods != null)  for (String method : domainMethods)     session.invalidate(method);
+        _invalidationCount.incrementAndGet();
+    }
+
+    /**Get if given event invalidates any cached method, so it must not be dropped before
+     {@link #onEvent(String, String)} even if nobody listens it.*/
+    final boolean isInvalidatedBy(String event) {
+        if (_eventRules.containsKey(event))     return true;
+        final int dot = event.lastIndexOf('.');
+        return dot > 0 && !_domainRules.isEmpty() && _domainRules.containsKey(event.substring(0, dot));
+    }
+
+    /**Forget state and cached results of detached session. Results are removed eagerly, because state
+     of a session created again starts from the first generation.*/
+    final void removeSession(String sessionId) {
+        final SessionState session = _sessions.remove(sessionId);
+        if (session != null)    session.invalidateAll();
+        final String prefix = sessionId + '\u0000';
+        synchronized (_entries) { _entries.keySet().removeIf(key -> key.startsWith(prefix)); }
+    }
+
+    private SessionState sessionOf(@Nullable String sessionId) {
+        return _sessions.computeIfAbsent(sessionId != null ? sessionId : RootSession, k -> new SessionState());
+    }
+
+    /**Cached result with generation of its method when it is sent.*/
+    private static final class Entry {
+        private final long generation;
+        private final ResultBase result;
+        private Entry(long generation, ResultBase result) { this.generation = generation; this.result = result; }
+    }
+
+    /**Rule of a cached method.*/
+    private static final class Rule {
+        private final Set<String> requiredDomains;
+        private Rule(Set<String> requiredDomains) { this.requiredDomains = requiredDomains; }
+    }
+
+    /**Enabled domains and generations of a session. Generation of a method is the sum of session wide
+     generation and method's own generation, both only increase.*/
+    private static final class SessionState {
+        private final Set<String> _enabledDomains = ConcurrentHashMap.newKeySet();
+        private final AtomicLong _generation = new AtomicLong();
+        /**Own generation of each method, guarded by this state.*/
+        private final Map<String, Long> _methodGenerations = new HashMap<>();
+
+        private boolean isEnabled(Set<String> domains) { return _enabledDomains.containsAll(domains); }
+
+        private void setEnabled(String domain, boolean enabled) {
+            if (enabled)    _enabledDomains.add(domain);
+            else            _enabledDomains.remove(domain);
+        }
+
+        private synchronized long generationOf(String method) {
+            return _generation.get() + _methodGenerations.getOrDefault(method, 0L);
+        }
+
+        private synchronized void invalidate(String method) {
+            _methodGenerations.merge(method, 1L, Long::sum);
+        }
+
+        private void invalidateAll() { _generation.incrementAndGet(); }
+    }
+}
@@ -0,0 +1,28 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**Parameters of event <pre>Page.screencastFrame</pre>.
+ @author Joshua */
+public final class ScreencastFrameEvent {
+    /**Decoded frame image data.*/
+    private final BinaryData data;
+    /**Screencast frame metadata such as device size and scroll offset.*/
+    private final JsonNode metadata;
+    /**Frame number, which should be acknowledged by <pre>Page.screencastFrameAck</pre>.*/
+    private final int sessionId;
+
+    @JsonCreator ScreencastFrameEvent(
+        @JsonProperty("data") BinaryData data,
+        @JsonProperty("metadata") JsonNode metadata,
+        @JsonProperty("sessionId") int sessionId
+    ) {
+        this.data = data; this.metadata = metadata; this.sessionId = sessionId;
+    }
+
+    public BinaryData getData() { return data; }
+    public JsonNode getMetadata() { return metadata; }
+    public int getSessionId() { return sessionId; }
+}
@@ -0,0 +1,17 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**Result of method <pre>Page.captureScreenshot</pre>.
+ @author Joshua */
+public final class ScreenshotResult extends ResultBase {
+    /**Decoded image data.*/
+    private final BinaryData data;
+
+    @JsonCreator ScreenshotResult(@JsonProperty("data") BinaryData data) { this.data = data; }
+    ScreenshotResult(FailedResult failedResult) { super(failedResult); data = null; }
+
+    /**Get decoded image data, null if method is failed.*/
+    public BinaryData getData() { return data; }
+}
@@ -0,0 +1,25 @@
+package org.josh.jcri;
+
+/**Handle of a registered event listener.
+ Each subscription has its own bounded event queue, see {@link OverflowPolicy} for behavior when queue
+ is full. Call {@link #close()} to stop receiving events. Closing a subscription more than once has no
+ effect.
+ @author Joshua */
+public interface Subscription extends AutoCloseable {
+    /**Get subscribed event method name, such as <pre>"Page.loadEventFired"</pre>.*/
+    String getMethod();
+    /**Get if this subscription is still receiving events.*/
+    boolean isActive();
+    /**Get max count of queued events.*/
+    int getCapacity();
+    /**Get queue overflow policy.*/
+    OverflowPolicy getOverflowPolicy();
+    /**Get count of events waiting to be delivered.*/
+    int getQueueSize();
+    /**Get count of events dropped because queue is full.*/
+    long getDroppedCount();
+    /**Get count of events replaced by newer event with the same coalescing key.*/
+    long getCoalescedCount();
+    /**Remove listener from event center. Events that are already queued will not be delivered.*/
+    @Override void close();
+}
@@ -0,0 +1,220 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Asynchronous discovery of targets and browser versions through browser's HTTP debug interface.
+ Requests of <pre>http://host:port/json</pre> and <pre>http://host:port/json/version</pre> run on an
+ executor with keep-alive connections (connections are reused by {@link HttpURLConnection} when reply
+ is fully read), and replies are bound by shared object readers without building a string first.
+ <p>Replies are cached for a configurable time, and concurrent requests of the same url share a single
+ HTTP request. Failures are never cached, and are reported by completing futures exceptionally with
+ {@link IOException}, such as connection refused, HTTP error status, or invalid json.</p>
+ <p>Returned futures are independent copies, so cancelling one of them does not affect others.</p>
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class TargetDiscovery implements Closeable {
+    /**Shared reader of <pre>/json</pre> reply. Unknown fields added by newer browsers are ignored.*/
+    private static final ObjectReader TabListReader = EventCenter.readerFor(new TypeReference<List<TabInfo>>() {})
+        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    /**Shared reader of <pre>/json/version</pre> reply.*/
+    private static final ObjectReader VersionReader = EventCenter.readerFor(BrowserVersion.class)
+        .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    /**Count of threads of default executor.*/
+    private static final int DefaultThreadCount = 8;
+    /**Default timeout of connecting and reading in millisecond.*/
+    private static final int DefaultTimeout = 10_000;
+
+    private final ExecutorService _executor;
+    /**Whether executor is created by this instance and is shutdown when closed.*/
+    private final boolean _ownsExecutor;
+    /**Cached and ongoing requests by url.*/
+    private final ConcurrentHashMap<String, CacheEntry> _cache = new ConcurrentHashMap<>();
+    /**Time to live of cached replies in nanosecond.*/
+    private volatile long _ttl = 0;
+    private volatile int _timeout = DefaultTimeout;
+
+    /**Create discovery instance without caching.
+     @param executor executor to run blocking HTTP requests. Use null to create a pool of daemon threads
+        which is shutdown by {@link #close()}. */
+    public TargetDiscovery(@Nullable ExecutorService executor) {
+        if (executor == null) {
+            _executor = Executors.newFixedThreadPool(DefaultThreadCount, runnable -> {
+                final Thread thread = new Thread(runnable, "jcri-discovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            _ownsExecutor = true;
+        }
+        else {
+            _executor = executor;
+            _ownsExecutor = false;
+        }
+    }
+
+    /**Set time to keep successful replies. Use 0 to only share concurrent requests.*/
+    public TargetDiscovery setCacheTtl(long ttl, TimeUnit unit) {
+        _ttl = unit.toNanos(Math.max(ttl, 0));
+        return this;
+    }
+
+    /**Set timeout of connecting and reading each reply, 10 seconds by default.*/
+    public TargetDiscovery setTimeout(long timeout, TimeUnit unit) {
+        _timeout = (int)Math.min(unit.toMillis(timeout), Integer.MAX_VALUE);
+        return this;
+    }
+
+    /**Get all targets of browser, including pages, workers, and extension background pages.
+     @param host host that browser's debug interface is bound on.
+     @param port browser's debug port.
+     @return future of unmodifiable list of targets. */
+    public CompletableFuture<List<TabInfo>> getTabs(String host, int port) {
+        return get(urlOf(host, port, "/json"), TabListReader);
+    }
+
+    /**Get browser's version information and browser level debugger url.
+     @param host host that browser's debug interface is bound on.
+     @param port browser's debug port. */
+    public CompletableFuture<BrowserVersion> getVersion(String host, int port) {
+        return get(urlOf(host, port, "/json/version"), VersionReader);
+    }
+
+    /**Get all targets of many browsers in parallel.
+     @param endpoints browsers' debug interfaces, which can be unresolved addresses.
+     @return future of each endpoint in the same order, each fails separately. */
+    public Map<InetSocketAddress, CompletableFuture<List<TabInfo>>> getTabs(Collection<InetSocketAddress> endpoints) {
+        final Map<InetSocketAddress, CompletableFuture<List<TabInfo>>> results = new LinkedHashMap<>();
+        for (InetSocketAddress endpoint : endpoints)
+            results.put(endpoint, getTabs(endpoint.getHostString(), endpoint.getPort()));
+        return results;
+    }
+
+    /**Get version information of many browsers in parallel.
+     @param endpoints browsers' debug interfaces, which can be unresolved addresses.
+     @return future of each endpoint in the same order, each fails separately. */
+    public Map<InetSocketAddress, CompletableFuture<BrowserVersion>> getVersions(
+        Collection<InetSocketAddress> endpoints
+    ) {
+        final Map<InetSocketAddress, CompletableFuture<BrowserVersion>> results = new LinkedHashMap<>();
+        for (InetSocketAddress endpoint : endpoints)
+            results.put(endpoint, getVersion(endpoint.getHostString(), endpoint.getPort()));
+        return results;
+    }
+
+    /**Discard cached replies of given browser, such as after opening or closing a target.*/
+    public void invalidate(String host, int port) {
+        _cache.remove(urlOf(host, port, "/json"));
+        _cache.remove(urlOf(host, port, "/json/version"));
+    }
+
+    /**Discard all cached replies.*/
+    public void invalidateAll() { _cache.clear(); }
+
+    /**Shutdown executor if it is created by this instance.*/
+    @Override public void close() {
+        _cache.clear();
+        if (_ownsExecutor)  _executor.shutdownNow();
+    }
+
+    /**Get all targets of browser synchronously without caching.
+     @throws IOException if fail to connect, browser replies error status, or reply is invalid. */
+    static List<TabInfo> fetchTabs(String host, int port, int timeout) throws IOException {
+        return fetch(new URL(urlOf(host, port, "/json")), TabListReader, timeout);
+    }
+
+    /**Get cached reply of given url, or start a new request.*/
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> get(String url, ObjectReader reader) {
+        while (true) {
+            final CacheEntry existing = _cache.get(url);
+            if (existing != null && !existing.isExpired(System.nanoTime()))
+                return (CompletableFuture<T>)existing.future.thenApply(value -> value);
+            final CacheEntry entry = new CacheEntry();
+            if (existing == null ? _cache.putIfAbsent(url, entry) != null : !_cache.replace(url, existing, entry))
+                continue;   // Another thread started request meanwhile
+            try { _executor.execute(() -> entry.run(this, url, reader)); }
+            catch (RuntimeException e) {    // RejectedExecutionException if closed
+                _cache.remove(url, entry);
+                entry.future.completeExceptionally(e);
+            }
+            return (CompletableFuture<T>)entry.future.thenApply(value -> value);
+        }
+    }
+
+    /**Request url and bind json reply.
+     @param timeout timeout of connecting and reading in millisecond.
+     @throws IOException if fail to connect, browser replies error status, or reply is invalid. */
+    @SuppressWarnings("unchecked")
+    private static <T> T fetch(URL url, ObjectReader reader, int timeout) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestProperty("Accept", "application/json");
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            //! Read error body so that connection can be reused
+            final InputStream error = connection.getErrorStream();
+            if (error != null) {
+                try (InputStream in = error) {
+                    final byte[] buffer = new byte[1024];
+                    while (in.read(buffer) >= 0) { }
+                }
+            }
+            throw new IOException("Browser replied HTTP " + status + " " + connection.getResponseMessage() + " for " + url);
+        }
+        //! Parser closes stream after binding, which returns connection to keep-alive cache
+        final T value;
+        try (InputStream in = connection.getInputStream()) { value = reader.readValue(in); }
+        if (value instanceof List)  return (T)Collections.unmodifiableList((List<?>)value);
+        return value;
+    }
+
+    /**Build url of debug interface, IPv6 literal is bracketed.*/
+    private static String urlOf(String host, int port, String path) {
+        final String literal = host.indexOf(':') >= 0 && !host.startsWith("[") ? "[" + host + "]" : host;
+        return "http://" + literal + ":" + port + path;
+    }
+
+    /**Cached or ongoing request.*/
+    private static final class CacheEntry {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        /**Time when cached reply expires, only valid after future is completed.*/
+        private volatile long expireNanos;
+
+        /**Get if reply is completed and expired. Ongoing request never expires.*/
+        private boolean isExpired(long now) { return future.isDone() && now - expireNanos >= 0; }
+
+        /**Request url, then complete future. Expiring time is set before completing, and failed
+         request is removed from cache before completing, so callers never see a stale entry.*/
+        private void run(TargetDiscovery discovery, String url, ObjectReader reader) {
+            try {
+                final Object value = fetch(new URL(url), reader, discovery._timeout);
+                expireNanos = System.nanoTime() + discovery._ttl;
+                future.complete(value);
+            }
+            catch (IOException | RuntimeException e) {
+                discovery._cache.remove(url, this);
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.annotation.Nullable;
+
+/**Parameters of events <pre>Target.targetCreated</pre>, <pre>Target.targetInfoChanged</pre>, and
+ <pre>Target.targetDestroyed</pre>. Only one of the fields is set depending on event.
+ @author Joshua */
+@JsonIgnoreProperties(ignoreUnknown = true)
+final class TargetEvent {
+    /**Target's information of created and changed events.*/
+    @Nullable final TargetInfo targetInfo;
+    /**Target Id of destroyed event.*/
+    @Nullable final String targetId;
+
+    @JsonCreator TargetEvent(
+        @JsonProperty("targetInfo") @Nullable TargetInfo targetInfo,
+        @JsonProperty("targetId") @Nullable String targetId
+    ) {
+        this.targetInfo = targetInfo; this.targetId = targetId;
+    }
+}
@@ -0,0 +1,47 @@
+package org.josh.jcri;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.annotation.Nullable;
+
+/**Target's information reported by <pre>Target.targetCreated</pre> and <pre>Target.targetInfoChanged</pre>
+ events. Instances are immutable, a changed target is reported as a new instance.
+ @see TargetRegistry
+ @author Joshua */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class TargetInfo {
+    private final String targetId;
+    private final String type;
+    private final String title;
+    private final String url;
+    /**Whether target has an attached client.*/
+    private final boolean attached;
+    /**Id of target which opened this target, null if not opened by another target.*/
+    @Nullable private final String openerId;
+    @Nullable private final String browserContextId;
+
+    @JsonCreator public TargetInfo(
+        @JsonProperty("targetId") String targetId,
+        @JsonProperty("type") String type,
+        @JsonProperty("title") String title,
+        @JsonProperty("url") String url,
+        @JsonProperty("attached") boolean attached,
+        @JsonProperty("openerId") @Nullable String openerId,
+        @JsonProperty("browserContextId") @Nullable String browserContextId
+    ) {
+        this.targetId = targetId; this.type = type; this.title = title; this.url = url;
+        this.attached = attached; this.openerId = openerId; this.browserContextId = browserContextId;
+    }
+
+    public String getTargetId() { return targetId; }
+    /**Get target type, such as <pre>"page"</pre>, <pre>"iframe"</pre>, or <pre>"service_worker"</pre>.*/
+    public String getType() { return type; }
+    public String getTitle() { return title; }
+    public String getUrl() { return url; }
+    public boolean isAttached() { return attached; }
+    @Nullable public String getOpenerId() { return openerId; }
+    @Nullable public String getBrowserContextId() { return browserContextId; }
+
+    @Override public String toString() { return type + " " + targetId + " " + url; }
+}
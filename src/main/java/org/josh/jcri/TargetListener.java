@@ -0,0 +1,17 @@
+package org.josh.jcri;
+
+/**Listener of target changes tracked by {@link TargetRegistry}.
+ Methods are called on the thread receiving events in arriving order, after registry is updated, so
+ they must not block. All methods do nothing by default.
+ @author Joshua */
+public interface TargetListener {
+    /**When a target is created, or is reported by browser when registry is started.*/
+    default void onCreated(TargetInfo target) { }
+    /**When title, url, or other information of a target is changed.
+     @param previous information before changed.
+     @param current information after changed. */
+    default void onChanged(TargetInfo previous, TargetInfo current) { }
+    /**When a target is destroyed.
+     @param target the last information of target. */
+    default void onDestroyed(TargetInfo target) { }
+}
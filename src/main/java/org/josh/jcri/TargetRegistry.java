@@ -0,0 +1,178 @@
+package org.josh.jcri;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Live registry of browser's targets which is updated incrementally by target discovery events.
+ {@link #start()} subscribes <pre>Target.targetCreated</pre>, <pre>Target.targetInfoChanged</pre>, and
+ <pre>Target.targetDestroyed</pre>, then enables <pre>Target.setDiscoverTargets</pre>, so browser
+ reports all existing targets and every later change without polling <pre>/json</pre>.
+ <p>Events are applied on the thread receiving them, so created, changed, and destroyed events of a
+ target are always applied in arriving order. Lookups by Id, type, and url are hash lookups and never
+ take a lock, and can be called from any thread.</p>
+ <p>The connection should be connected to browser level debugger url, see
+ {@link JCRI#attachToTarget(String)}. Discovering is not enabled again after reconnected.</p>
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class TargetRegistry implements Closeable {
+    /**Run event listeners on receiving thread, keeping order across event methods.*/
+    private static final Executor ReceivingThread = Runnable::run;
+
+    private final JCRI _connection;
+    /**Targets by Id.*/
+    private final ConcurrentHashMap<String, TargetInfo> _targets = new ConcurrentHashMap<>();
+    /**Target Ids by type.*/
+    private final ConcurrentHashMap<String, Set<String>> _byType = new ConcurrentHashMap<>();
+    /**Target Ids by url.*/
+    private final ConcurrentHashMap<String, Set<String>> _byUrl = new ConcurrentHashMap<>();
+    private final List<TargetListener> _listeners = new CopyOnWriteArrayList<>();
+    private final List<Subscription> _subscriptions = new ArrayList<>(3);
+    private boolean _started = false;
+
+    /**Create registry of targets of given connection, call {@link #start()} to start tracking.*/
+    public TargetRegistry(JCRI connection) { _connection = connection; }
+
+    /**Subscribe target events and enable discovering targets.
+     @return future which is completed when browser accepts discovering. Browser reports existing
+        targets before replying, so they are already in registry then. It is completed exceptionally
+        with {@link IllegalStateException} if browser refuses.
+     @throws IllegalStateException if already started. */
+    public synchronized CompletableFuture<TargetRegistry> start() throws IllegalStateException {
+        if (_started)   throw new IllegalStateException("Registry is already started");
+        _started = true;
+        _subscriptions.add(_connection.on("Target.targetCreated", TargetEvent.class, this::onChanged, ReceivingThread));
+        _subscriptions.add(_connection.on("Target.targetInfoChanged", TargetEvent.class, this::onChanged, ReceivingThread));
+        _subscriptions.add(_connection.on("Target.targetDestroyed", TargetEvent.class, this::onDestroyed, ReceivingThread));
+        return _connection.send("Target.setDiscoverTargets", "{\"discover\":true}",
+            EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)))
+            .thenApply(result -> {
+                if (!result.isSuccess())
+                    throw new CompletionException(new IllegalStateException(
+                        "Fail to discover targets: " + result.getError()));
+                return this;
+            });
+    }
+
+    /**Stop tracking, disable discovering targets, and clear registry.*/
+    @Override public synchronized void close() {
+        for (Subscription subscription : _subscriptions)    subscription.close();
+        _subscriptions.clear();
+        if (_started && _connection.isConnected())
+            _connection.send("Target.setDiscoverTargets", "{\"discover\":false}",
+                EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+        _started = false;
+        _targets.clear(); _byType.clear(); _byUrl.clear();
+    }
+
+    /**Add listener of target changes. Existing targets are not reported to new listener.*/
+    public void addListener(TargetListener listener) { _listeners.add(listener); }
+    /**Remove listener of target changes.
+     @return false if listener is not added. */
+    public boolean removeListener(TargetListener listener) { return _listeners.remove(listener); }
+
+    /**Get count of tracked targets.*/
+    public int size() { return _targets.size(); }
+
+    /**Get target by Id.
+     @return null if not existed or already destroyed. */
+    @Nullable public TargetInfo get(String targetId) { return _targets.get(targetId); }
+
+    /**Get snapshot of all targets.*/
+    public Collection<TargetInfo> getAll() { return Collections.unmodifiableList(new ArrayList<>(_targets.values())); }
+
+    /**Get targets of given type, such as <pre>"page"</pre>.*/
+    public List<TargetInfo> getByType(String type) { return lookup(_byType, type); }
+
+    /**Get targets whose url equals given url.*/
+    public List<TargetInfo> getByUrl(String url) { return lookup(_byUrl, url); }
+
+    /**Get targets matching given predicate, this visits all targets.*/
+    public List<TargetInfo> find(Predicate<? super TargetInfo> predicate) {
+        final List<TargetInfo> found = new ArrayList<>();
+        for (TargetInfo target : _targets.values())
+            if (predicate.test(target))     found.add(target);
+        return found;
+    }
+
+    /**Get targets of Ids in an index.*/
+    private List<TargetInfo> lookup(Map<String, Set<String>> index, String key) {
+        final Set<String> ids = index.get(key);
+        if (ids == null)    return Collections.emptyList();
+        final List<TargetInfo> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            final TargetInfo target = _targets.get(id);
+            if (target != null)     found.add(target);
+        }
+        return found;
+    }
+
+    /**On target created or changed, creating event of an existing target is handled as changed.*/
+    private void onChanged(TargetEvent event) {
+        final TargetInfo current = event.targetInfo;
+        if (current == null)    return;
+        final String id = current.getTargetId();
+        final TargetInfo previous = _targets.put(id, current);
+        if (previous == null) {
+            addIndex(_byType, current.getType(), id);
+            addIndex(_byUrl, current.getUrl(), id);
+            notifyListeners(listener -> listener.onCreated(current));
+            return;
+        }
+        if (!previous.getType().equals(current.getType())) {
+            removeIndex(_byType, previous.getType(), id);
+            addIndex(_byType, current.getType(), id);
+        }
+        if (!previous.getUrl().equals(current.getUrl())) {
+            removeIndex(_byUrl, previous.getUrl(), id);
+            addIndex(_byUrl, current.getUrl(), id);
+        }
+        notifyListeners(listener -> listener.onChanged(previous, current));
+    }
+
+    /**On target destroyed.*/
+    private void onDestroyed(TargetEvent event) {
+        final String id = event.targetId;
+        if (id == null)     return;
+        final TargetInfo target = _targets.remove(id);
+        if (target == null)     return;
+        removeIndex(_byType, target.getType(), id);
+        removeIndex(_byUrl, target.getUrl(), id);
+        notifyListeners(listener -> listener.onDestroyed(target));
+    }
+
+    /**Call each listener, exception of a listener does not affect registry and other listeners.*/
+    private void notifyListeners(Consumer<TargetListener> call) {
+        for (TargetListener listener : _listeners) {
+            try { call.accept(listener); }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void addIndex(ConcurrentHashMap<String, Set<String>> index, String key, String id) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    /**Remove Id from index, and remove key when it has no Id, so short-lived urls do not leak.*/
+    private static void removeIndex(ConcurrentHashMap<String, Set<String>> index, String key, String id) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
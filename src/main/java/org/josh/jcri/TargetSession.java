@@ -0,0 +1,105 @@
+package org.josh.jcri;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Lightweight handle of a target attached through a browser level connection.
+ All sessions of a {@link JCRI} instance share its browser connection, method Id space, waiting
+ queue, and receiving thread. Methods are sent to this target by constructing domain method classes
+ with {@link MethodBase#MethodBase(TargetSession)}, and events of this target are only delivered to
+ listeners registered on this session.
+ @see JCRI#attachToTarget(String)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class TargetSession {
+    private final EventCenter _evt;
+    private final Transport _transport;
+    /**Attached target Id.*/
+    private final String _targetId;
+    /**Session Id assigned by browser.*/
+    private final String _sessionId;
+    /**Event listeners of this target.*/
+    private final EventRegistry _events;
+    private volatile boolean _attached = true;
+
+    TargetSession(EventCenter eventCenter, Transport transport, String targetId, String sessionId) {
+        _evt = eventCenter; _transport = transport;
+        _targetId = targetId; _sessionId = sessionId;
+        final EventRegistry connectionEvents = eventCenter.getEventRegistry();
+        _events = new EventRegistry(connectionEvents.getExecutor(), connectionEvents.getSubscribedMethods());
+    }
+
+    /**Get attached target Id.*/
+    public String getTargetId() { return _targetId; }
+    /**Get session Id assigned by browser.*/
+    public String getSessionId() { return _sessionId; }
+    /**Get if target is still attached.*/
+    public boolean isAttached() { return _attached; }
+
+    final EventCenter getEventCenter() { return _evt; }
+    final Transport getTransport() { return _transport; }
+    final EventRegistry getEventRegistry() { return _events; }
+
+    /**Set default executor for delivering events of this target to listeners.
+     @see JCRI#setEventExecutor(Executor) */
+    public void setEventExecutor(Executor executor) { _events.setExecutor(executor); }
+
+    /**Add listener of protocol event of this target.
+     @see JCRI#on(String, Class, Consumer) */
+    public <E> Subscription on(String method, Class<E> eventMetaClass, Consumer<? super E> listener) {
+        return _events.subscribe(method, eventMetaClass, listener, null);
+    }
+
+    /**Add listener of protocol event of this target which is run on given executor.
+     @see JCRI#on(String, Class, Consumer, Executor) */
+    public <E> Subscription on(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, Executor executor
+    ) {
+        return _events.subscribe(method, eventMetaClass, listener, executor);
+    }
+
+    /**Add listener of protocol event of this target with bounded queue and given overflow policy.
+     @see JCRI#on(String, Class, Consumer, Executor, int, OverflowPolicy, Function) */
+    public <E> Subscription on(
+        String method, Class<E> eventMetaClass, Consumer<? super E> listener, @Nullable Executor executor,
+        int capacity, OverflowPolicy policy, @Nullable Function<? super E, ?> coalesceKey
+    ) {
+        return _events.subscribe(method, eventMetaClass, listener, executor, capacity, policy, coalesceKey);
+    }
+
+    /**Wait next protocol event of this target.
+     @see JCRI#once(String, Class) */
+    public <E> CompletableFuture<E> once(String method, Class<E> eventMetaClass) {
+        return _events.once(method, eventMetaClass);
+    }
+
+    /**Decode {@link BinaryData} fields of given event of this target into user supplied sinks.
+     @see JCRI#setEventBinarySink(String, Class, Supplier) */
+    public <E> void setEventBinarySink(
+        String method, Class<E> eventMetaClass, @Nullable Supplier<? extends BinarySink> sinkFactory
+    ) {
+        _events.setBinarySink(method, eventMetaClass, sinkFactory);
+    }
+
+    /**Detach from target. The browser connection is not closed.
+     @return future which is completed with whether browser accepts detaching. */
+    public CompletableFuture<Boolean> detach() {
+        return new RawMethod(_evt, _transport, null, "Target.detachFromTarget",
+            "{\"sessionId\":\"" + _sessionId + "\"}")
+            .send(EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)))
+            .thenApply(result -> {
+                if (result.isSuccess())     _evt.removeSession(_sessionId);
+                return result.isSuccess();
+            });
+    }
+
+    /**Mark this session is detached.*/
+    final void onDetached() { _attached = false; }
+
+    @Override public String toString() { return "TargetSession(" + _targetId + ", " + _sessionId + ")"; }
+}
@@ -0,0 +1,103 @@
+package org.josh.jcri;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Hashed timer wheel for expiring methods which are waiting browser's reply.
+ A single daemon thread is shared by all connections, it only removes expired methods from waiting
+ table, and their futures are completed in their connections' executors. Scheduling a timeout is only
+ a queue offer, and timeout of completed method is never removed explicitly, it is simply discarded
+ when its bucket is visited. So memory of timeouts is bounded by number of methods sent within the
+ longest timeout.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class TimeoutWheel implements Runnable {
+    /**Shared instance.*/
+    private static volatile TimeoutWheel _instance;
+
+    /**Duration of each tick in nanosecond.*/
+    private final long _tickNanos;
+    /**Buckets of wheel, size is power of 2.*/
+    private final Queue<Timeout>[] _buckets;
+    private final int _mask;
+    /**Time of wheel starts in nanosecond.*/
+    private final long _startNanos;
+
+    /**Get shared wheel instance, start its thread if not started.*/
+    static TimeoutWheel get() {
+        TimeoutWheel wheel = _instance;
+        if (wheel != null)  return wheel;
+        synchronized (TimeoutWheel.class) {
+            if (_instance == null) {
+                wheel = new TimeoutWheel(10, TimeUnit.MILLISECONDS, 512);
+                final Thread thread = new Thread(wheel, "jcri-timeout-wheel");
+                thread.setDaemon(true);
+                thread.start();
+                _instance = wheel;
+            }
+            return _instance;
+        }
+    }
+
+    /**Create timer wheel.
+     @param tick duration of each tick.
+     @param unit unit of tick.
+     @param bucketCount count of buckets, rounded up to power of 2. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimeoutWheel(long tick, TimeUnit unit, int bucketCount) {
+        _tickNanos = unit.toNanos(tick);
+        int size = 1;
+        while (size < bucketCount)  size <<= 1;
+        _buckets = new Queue[size];
+        for (int i = 0; i < size; ++i)  _buckets[i] = new ConcurrentLinkedQueue<>();
+        _mask = size - 1;
+        _startNanos = System.nanoTime();
+    }
+
+    /**Schedule timeout of a method at its deadline.
+     @param method method to expire, its deadline must be set. */
+    void schedule(PendingMethod<?> method) {
+        final long deadline = method.getDeadlineNanos();
+        final long tick = (deadline - _startNanos + _tickNanos - 1) / _tickNanos;
+        _buckets[(int)(tick & _mask)].offer(new Timeout(method, deadline));
+    }
+
+    @Override public void run() {
+        long tick = 0;
+        for (;;) {
+            //! Wait next tick
+            final long tickTime = _startNanos + tick * _tickNanos;
+            long sleep = tickTime - System.nanoTime();
+            while (sleep > 0) {
+                try { TimeUnit.NANOSECONDS.sleep(sleep); }
+                catch (InterruptedException e) {
+                    // Do nothing, this thread is never stopped
+                }
+                sleep = tickTime - System.nanoTime();
+            }
+            //! Expire methods in current bucket, keep those belong to later rounds
+            final long now = System.nanoTime();
+            final Queue<Timeout> bucket = _buckets[(int)(tick & _mask)];
+            for (int count = bucket.size(); count > 0; --count) {
+                final Timeout timeout = bucket.poll();
+                if (timeout == null)    break;
+                if (timeout.method.isDone())    continue;
+                if (timeout.deadline - now <= 0)
+                    timeout.method.expire();
+                else
+                    bucket.offer(timeout);
+            }
+            ++tick;
+        }
+    }
+
+    /**Scheduled timeout of a method.*/
+    private static final class Timeout {
+        private final PendingMethod<?> method;
+        private final long deadline;
+
+        private Timeout(PendingMethod<?> method, long deadline) { this.method = method; this.deadline = deadline; }
+    }
+}
@@ -0,0 +1,67 @@
+package org.josh.jcri;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Entry of emitting JDK Flight Recorder events.
+ JFR events are emitted if <pre>JfrEvents</pre> is compiled (built by JDK 11 and later), <pre>jdk.jfr</pre>
+ module is available at runtime (JDK 11+, or JDK 8u262+), and system property
+ <pre>org.josh.jcri.jfr</pre> is not <pre>false</pre>. Otherwise every method here is an empty constant
+ branch, and <pre>JfrEvents</pre> is never loaded. It is loaded by name, so this class compiles without
+ <pre>jdk.jfr</pre>.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+final class Tracing {
+    /**System property name of enabling JFR events.*/
+    private static final String JfrEnabledPropertyName = "org.josh.jcri.jfr";
+    /**Class name of JFR events recorder.*/
+    private static final String JfrRecorderClassName = "org.josh.jcri.JfrEvents";
+    /**JFR events recorder, null if disabled.*/
+    @Nullable private static final Recorder _jfr;
+    /**Whether JFR events are emitted.*/
+    static final boolean JfrEnabled;
+    static {
+        Recorder recorder = null;
+        if (!"false".equalsIgnoreCase(System.getProperty(JfrEnabledPropertyName))) {
+            try {
+                Class.forName("jdk.jfr.Event");
+                recorder = Class.forName(JfrRecorderClassName).asSubclass(Recorder.class)
+                    .getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | LinkageError e) {
+                // e.g. running on JDK 8 before 8u262, or built without JFR events
+            }
+        }
+        _jfr = recorder;
+        JfrEnabled = recorder != null;
+    }
+
+    private Tracing() { }
+
+    /**Command is sent.
+     @param size UTF-8 bytes of command. */
+    static void commandSent(long id, String method, @Nullable String sessionId, int size) {
+        if (JfrEnabled)     _jfr.commandSent(id, method, sessionId, size);
+    }
+
+    /**Reply of a method is received.
+     @param size text length of reply message. */
+    static void replyReceived(PendingMethod<?> method, int size, boolean error) {
+        if (JfrEnabled)
+            _jfr.replyReceived(method.getId(), method.getMethodName(), size, method.getElapsedNanos(), error);
+    }
+
+    /**Event is received.
+     @param size text length of event message. */
+    static void eventReceived(String method, @Nullable String sessionId, int size) {
+        if (JfrEnabled)     _jfr.eventReceived(method, sessionId, size);
+    }
+
+    /**Emitter of tracing events.*/
+    interface Recorder {
+        void commandSent(long id, String method, @Nullable String sessionId, int size);
+        /**@param latency nanoseconds from sending command to receiving reply.*/
+        void replyReceived(long id, @Nullable String method, int size, long latency, boolean error);
+        void eventReceived(String method, @Nullable String sessionId, int size);
+    }
+}
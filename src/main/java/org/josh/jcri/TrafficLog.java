@@ -0,0 +1,184 @@
+package org.josh.jcri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Append-only binary log of all frames sent to and received from browser, for replaying offline by
+ {@link TrafficReplayer}. Frames are written into memory-mapped regions of the file, so recording a
+ frame is a copy into memory without system call, and the operating system writes pages back lazily.
+ <p>File layout, all numbers are little endian:</p>
+ <pre>
+ header:  "JCRILOG1" | int64 epoch millisecond when log is created
+ record:  int32 length of remaining record | int64 nanoseconds since log is created
+          | int8 direction (0 received, 1 sent) | int8 length of session Id | session Id in ASCII
+          | frame in UTF-8
+ </pre>
+ A record length of 0 marks the end of log, so a log which is not closed after a crash is still
+ readable up to the last complete record. Session Id of received frame is read from the end of frame,
+ where browser puts it in flattened mode.
+ @see JCRI#startTrafficLog(Path)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class TrafficLog implements Closeable {
+    /**Leading bytes of log file.*/
+    static final byte[] Magic = "JCRILOG1".getBytes(StandardCharsets.US_ASCII);
+    /**Size of file header.*/
+    static final int HeaderSize = 16;
+    /**Size of record fields before session Id, excluding length field.*/
+    static final int RecordHeaderSize = 8 + 1 + 1;
+    static final byte Received = 0;
+    static final byte Sent = 1;
+    /**Default size of each mapped region.*/
+    private static final int DefaultRegionSize = 64 << 20;
+
+    private final Path _file;
+    private final FileChannel _channel;
+    private final int _regionSize;
+    /**{@link System#nanoTime()} when log is created.*/
+    private final long _startNanos = System.nanoTime();
+
+    //! Following fields are guarded by this log
+    /**Currently mapped region, null if closed.*/
+    @Nullable private MappedByteBuffer _region;
+    /**File position of current region.*/
+    private long _regionPosition;
+    private long _recordCount = 0;
+
+    /**Create log file, an existing file is replaced.
+     @throws IOException if fail to create or map file. */
+    public TrafficLog(Path file) throws IOException { this(file, DefaultRegionSize); }
+
+    /**Create log file, an existing file is replaced.
+     @param regionSize size of each mapped region, larger frame gets a region of its own size.
+     @throws IOException if fail to create or map file. */
+    public TrafficLog(Path file, int regionSize) throws IOException {
+        if (regionSize < HeaderSize)    throw new IllegalArgumentException("Region is too small: " + regionSize);
+        _file = file;
+        _regionSize = regionSize;
+        _channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            _region = map(0, regionSize);
+            _region.put(Magic).putLong(System.currentTimeMillis());
+        }
+        catch (IOException | RuntimeException e) {
+            _channel.close();
+            throw e;
+        }
+    }
+
+    /**Get log file.*/
+    public Path getFile() { return _file; }
+    /**Get count of recorded frames.*/
+    public synchronized long getRecordCount() { return _recordCount; }
+    /**Get size of recorded data in bytes, including file header.*/
+    public synchronized long getSize() { return _region != null ? _regionPosition + _region.position() : _regionPosition; }
+    /**Get if log is closed.*/
+    public synchronized boolean isClosed() { return _region == null; }
+
+    /**Record a sent frame, ignored if log is closed.
+     @param sessionId session Id of target that the frame is sent to, null for the connected target.
+     @param utf8 UTF-8 encoded command. */
+    void onSent(@Nullable String sessionId, byte[] utf8, int offset, int length) {
+        final long nanos = System.nanoTime() - _startNanos;
+        synchronized (this) {
+            final ByteBuffer region = reserve(RecordHeaderSize + sessionLength(sessionId) + length);
+            if (region == null)     return;
+            final int start = beginRecord(region, nanos, Sent, sessionId);
+            region.put(utf8, offset, length);
+            endRecord(region, start);
+        }
+    }
+
+    /**Record a received frame, ignored if log is closed.*/
+    void onReceived(String text) {
+        final long nanos = System.nanoTime() - _startNanos;
+        final String sessionId = EventCenter.sessionIdOf(text);
+        //! Encoding to array and copying in bulk is much faster than encoding into mapped memory
+        final byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            final ByteBuffer region = reserve(RecordHeaderSize + sessionLength(sessionId) + utf8.length);
+            if (region == null)     return;
+            final int start = beginRecord(region, nanos, Received, sessionId);
+            region.put(utf8);
+            endRecord(region, start);
+        }
+    }
+
+    /**Flush mapped data to disk, and truncate file to recorded size.*/
+    @Override public synchronized void close() throws IOException {
+        if (_region == null)    return;
+        final long size = _regionPosition + _region.position();
+        _region.force();
+        _region = null;
+        try { _channel.truncate(size); }
+        finally {
+            _channel.close();
+        }
+    }
+
+    @Override public String toString() { return "TrafficLog(" + _file + ")"; }
+
+    /**Get current region with at least given bytes remaining for a record, map a new region if needed.
+     A new region starts at the end of the last record, so records are contiguous in file.
+     @param size size of record excluding length field.
+     @return null if closed. */
+    @Nullable private ByteBuffer reserve(int size) {
+        MappedByteBuffer region = _region;
+        if (region == null)     return null;
+        //! Length field and end mark of the next record
+        final int needed = 4 + size + 4;
+        if (region.remaining() >= needed)   return region;
+        _regionPosition += region.position();
+        try { region = map(_regionPosition, Math.max(_regionSize, needed)); }
+        catch (IOException e) {     // e.g. disk is full, stop recording
+            e.printStackTrace();
+            _region = null;
+            try { _channel.close(); }
+            catch (IOException ignored) { }
+            return null;
+        }
+        _region = region;
+        return region;
+    }
+
+    private MappedByteBuffer map(long position, int size) throws IOException {
+        final MappedByteBuffer region = _channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        return region;
+    }
+
+    /**Write record fields before frame, length field is written by {@link #endRecord(ByteBuffer, int)}.
+     @return position of length field. */
+    private static int beginRecord(ByteBuffer region, long nanos, byte direction, @Nullable String sessionId) {
+        final int start = region.position();
+        region.position(start + 4);
+        region.putLong(nanos).put(direction);
+        if (sessionLength(sessionId) == 0)  region.put((byte)0);
+        else {
+            region.put((byte)sessionId.length());
+            for (int i = 0; i < sessionId.length(); ++i)    region.put((byte)sessionId.charAt(i));
+        }
+        return start;
+    }
+
+    /**Write length field after frame is written, so a partially written record is never read.*/
+    private void endRecord(ByteBuffer region, int start) {
+        region.putInt(start, region.position() - start - 4);
+        ++_recordCount;
+    }
+
+    /**Get length of session Id field, Ids longer than 255 characters are not recorded.*/
+    private static int sessionLength(@Nullable String sessionId) {
+        return sessionId != null && sessionId.length() <= 0xff ? sessionId.length() : 0;
+    }
+}
@@ -0,0 +1,133 @@
+package org.josh.jcri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Replayer of a {@link TrafficLog} which feeds recorded received frames into a connection's receiving
+ path, without browser. Replies and events are dispatched exactly as they arrived, so event listeners
+ run as in production; replies of commands which are not sent by the connection are ignored. Sent
+ frames are skipped.
+ <pre>
+ try (TrafficReplayer replayer = new TrafficReplayer(Paths.get("incident.jcrilog"))) {
+     final JCRI connection = new JCRI(URI.create("ws://replay"), null);
+     connection.on("Network.requestWillBeSent", RequestEvent.class, handler);
+     replayer.replay(connection);
+ }
+ </pre>
+ Log is read through a read-only memory mapping, and can be replayed many times.
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class TrafficReplayer implements Closeable {
+    private final FileChannel _channel;
+    private final MappedByteBuffer _log;
+    /**Epoch millisecond when log is created.*/
+    private final long _startMillis;
+    private volatile boolean _realTime = false;
+
+    /**Open log file.
+     @throws IOException if fail to read file, or file is not a traffic log. Log larger than 2 GiB is
+        not supported. */
+    public TrafficReplayer(Path file) throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = _channel.size();
+            if (size > Integer.MAX_VALUE)   throw new IOException("Traffic log larger than 2 GiB: " + file);
+            _log = _channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            _log.order(ByteOrder.LITTLE_ENDIAN);
+            final byte[] magic = new byte[TrafficLog.Magic.length];
+            if (size < TrafficLog.HeaderSize || !Arrays.equals(magic(magic), TrafficLog.Magic))
+                throw new IOException("Not a traffic log: " + file);
+            _startMillis = _log.getLong(TrafficLog.Magic.length);
+        }
+        catch (IOException | RuntimeException e) {
+            _channel.close();
+            throw e;
+        }
+    }
+
+    /**Set whether frames are fed with recorded intervals. By default frames are fed as fast as
+     possible, such as for measuring throughput of dispatching.*/
+    public TrafficReplayer setRealTime(boolean realTime) {
+        _realTime = realTime;
+        return this;
+    }
+
+    /**Get epoch millisecond when log is created.*/
+    public long getStartMillis() { return _startMillis; }
+
+    /**Feed all received frames into connection on the calling thread.
+     @param connection connection whose listeners receive replayed events, it does not need to be
+        connected.
+     @return count of fed frames.
+     @throws InterruptedException if interrupted while waiting in real time mode. */
+    public long replay(JCRI connection) throws InterruptedException {
+        return replay(connection, null);
+    }
+
+    /**Feed received frames of a target into connection on the calling thread.
+     @param sessionId session Id of attached target whose frames are fed, null to feed all frames.
+     @return count of fed frames.
+     @throws InterruptedException if interrupted while waiting in real time mode. */
+    public long replay(JCRI connection, @Nullable String sessionId) throws InterruptedException {
+        final EventCenter evt = connection.getEventCenter();
+        final boolean realTime = _realTime;
+        //! Own view for bulk copying, so that many threads can replay the same log
+        final ByteBuffer view = _log.duplicate();
+        final long startNanos = System.nanoTime();
+        long firstNanos = -1;
+        long count = 0;
+        int position = TrafficLog.HeaderSize;
+        byte[] frame = new byte[1024];
+        while (position + 4 <= _log.limit()) {
+            final int length = _log.getInt(position);
+            //! Zero length is end mark of a log which is not closed
+            if (length < TrafficLog.RecordHeaderSize || position + 4 + length > _log.limit())     break;
+            final int record = position + 4;
+            position = record + length;
+            if (_log.get(record + 8) != TrafficLog.Received)    continue;
+            final int sessionLength = _log.get(record + 9) & 0xff;
+            if (sessionId != null && !sessionIdEquals(record + TrafficLog.RecordHeaderSize, sessionLength, sessionId))
+                continue;
+            if (realTime) {
+                final long nanos = _log.getLong(record);
+                if (firstNanos < 0)     firstNanos = nanos;
+                final long delay = (nanos - firstNanos) - (System.nanoTime() - startNanos);
+                if (delay > 0)  TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            final int frameStart = record + TrafficLog.RecordHeaderSize + sessionLength;
+            final int frameLength = position - frameStart;
+            if (frame.length < frameLength)     frame = new byte[Math.max(frameLength, frame.length * 2)];
+            view.position(frameStart);
+            view.get(frame, 0, frameLength);
+            evt.onMessage(new String(frame, 0, frameLength, StandardCharsets.UTF_8));
+            ++count;
+        }
+        return count;
+    }
+
+    @Override public void close() throws IOException { _channel.close(); }
+
+    /**Read leading bytes of log into given array.*/
+    private byte[] magic(byte[] bytes) {
+        for (int i = 0; i < bytes.length; ++i)  bytes[i] = _log.get(i);
+        return bytes;
+    }
+
+    private boolean sessionIdEquals(int position, int length, String sessionId) {
+        if (length != sessionId.length())   return false;
+        for (int i = 0; i < length; ++i)
+            if (_log.get(position + i) != sessionId.charAt(i))  return false;
+        return true;
+    }
+}
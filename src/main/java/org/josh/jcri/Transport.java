@@ -0,0 +1,48 @@
+package org.josh.jcri;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**Connection which carries protocol messages between JCRI and browser.
+ Implementations deliver each received message as a whole to the message handler given when they are
+ created, and call close handler once when connection is closed.
+ @see WebSocket
+ @see PipeTransport
+ @author Joshua */
+interface Transport {
+    /**Send a UTF-8 encoded message.
+     Content of given buffer is copied or written before returning, so buffer can be reused.
+     @throws RuntimeException if connection is not opened or fails. */
+    void sendText(ByteBuffer utf8Text);
+
+    /**Send multiple UTF-8 encoded messages in a single write pass.
+     @see #sendText(ByteBuffer) */
+    void sendText(Collection<ByteBuffer> utf8Texts);
+
+    /**Open connection and wait until it is opened.
+     @return whether connection is opened. */
+    boolean connectBlocking() throws InterruptedException;
+
+    /**Get if connection can be opened again by {@link #reconnectBlocking()} after it is lost.*/
+    boolean canReconnect();
+
+    /**Open connection again after it is lost, and wait until it is opened.
+     @return false if connection can not be opened again. */
+    boolean reconnectBlocking() throws InterruptedException;
+
+    /**Close connection and wait until it is closed.*/
+    void closeBlocking() throws InterruptedException;
+
+    /**Start closing connection without waiting.*/
+    void close();
+
+    /**Get if connection is opened.*/
+    boolean isOpen();
+    /**Get if connection is closing.*/
+    boolean isClosing();
+    /**Get if connection is closed.*/
+    boolean isClosed();
+
+    /**Get description of remote endpoint, such as web socket url.*/
+    String getEndpoint();
+}
@@ -0,0 +1,190 @@
+package org.josh.jcri;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**Growable UTF-8 encoded byte buffer for writing json text.
+ Each thread owns a pooled instance which is returned by {@link #local()}, so writing commands in
+ steady state allocates nothing. Content of buffer can be sent as web socket text frame directly
+ without building {@link String} and encoding it again.
+ @see CommonDomainType#toJson(Utf8JsonBuffer)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class Utf8JsonBuffer {
+    /**Initial size of buffer.*/
+    private static final int InitialCapacity = 512;
+    /**Pooled buffer larger than this size is discarded, so that a huge command does not hold memory
+     forever.*/
+    private static final int MaxPooledCapacity = 1 << 20;
+    /**Hex digits for escaping control characters.*/
+    private static final byte[] HexDigits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**Buffers owned by each thread.*/
+    private static final ThreadLocal<Utf8JsonBuffer> _localBuffer = ThreadLocal.withInitial(Utf8JsonBuffer::new);
+    /**String builders owned by each thread, used by {@link CommonDomainType#toJson(Utf8JsonBuffer)}.*/
+    private static final ThreadLocal<StringBuilder> _localBuilder = ThreadLocal.withInitial(StringBuilder::new);
+
+    private byte[] _bytes;
+    private int _length = 0;
+
+    /**Create an empty buffer.*/
+    public Utf8JsonBuffer() { _bytes = new byte[InitialCapacity]; }
+
+    /**Get empty buffer owned by current thread.
+     Content of returned buffer is only valid until next call of this method in the same thread. */
+    static Utf8JsonBuffer local() {
+        Utf8JsonBuffer buffer = _localBuffer.get();
+        if (buffer._bytes.length > MaxPooledCapacity) {
+            buffer = new Utf8JsonBuffer();
+            _localBuffer.set(buffer);
+        }
+        buffer._length = 0;
+        return buffer;
+    }
+
+    /**Get empty string builder owned by current thread.*/
+    static StringBuilder localStringBuilder() {
+        StringBuilder builder = _localBuilder.get();
+        if (builder.capacity() > MaxPooledCapacity) {
+            builder = new StringBuilder();
+            _localBuilder.set(builder);
+        }
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**Get count of written bytes.*/
+    public int length() { return _length; }
+    /**Discard all written bytes.*/
+    public void reset() { _length = 0; }
+    /**Discard bytes after given length.*/
+    void setLength(int length) { _length = length; }
+    /**Get internal byte array, only first {@link #length()} bytes are valid.*/
+    byte[] array() { return _bytes; }
+    /**Wrap written bytes from given offset into byte buffer without copying.*/
+    ByteBuffer toByteBuffer(int offset) { return ByteBuffer.wrap(_bytes, offset, _length - offset); }
+
+    /**Make sure buffer can hold given count of bytes more.*/
+    private void ensure(int count) {
+        final int required = _length + count;
+        if (required > _bytes.length)
+            _bytes = Arrays.copyOf(_bytes, Math.max(required, _bytes.length << 1));
+    }
+
+    /**Append an ASCII character.*/
+    public Utf8JsonBuffer append(char ascii) {
+        ensure(1);
+        _bytes[_length++] = (byte)ascii;
+        return this;
+    }
+
+    /**Append a string which contains only ASCII characters, such as field name.*/
+    public Utf8JsonBuffer appendAscii(String ascii) {
+        final int length = ascii.length();
+        ensure(length);
+        for (int i = 0; i < length; ++i)    _bytes[_length++] = (byte)ascii.charAt(i);
+        return this;
+    }
+
+    /**Append an integer.*/
+    public Utf8JsonBuffer append(long value) {
+        if (value == Long.MIN_VALUE)    return appendAscii("-9223372036854775808");
+        ensure(20);
+        if (value < 0) {
+            _bytes[_length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10)  ++digits;
+        for (int i = _length + digits - 1; i >= _length; --i) {
+            _bytes[i] = (byte)('0' + (int)(value % 10));
+            value /= 10;
+        }
+        _length += digits;
+        return this;
+    }
+
+    /**Append a boolean.*/
+    public Utf8JsonBuffer append(boolean value) { return appendAscii(value ? "true" : "false"); }
+
+    /**Append a floating point number. Non-finite value is written as null.*/
+    public Utf8JsonBuffer append(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))    return appendAscii("null");
+        if (value == (long)value && Math.abs(value) < 1e15)     return append((long)value);
+        return appendAscii(Double.toString(value));
+    }
+
+    /**Append already formatted json text (or any text) with UTF-8 encoding.*/
+    public Utf8JsonBuffer appendUtf8(CharSequence text) { return appendUtf8(text, 0, text.length()); }
+
+    /**Append part of text with UTF-8 encoding.
+     @param start start index of text, inclusive.
+     @param end end index of text, exclusive. */
+    public Utf8JsonBuffer appendUtf8(CharSequence text, int start, int end) {
+        ensure(end - start);
+        for (int i = start; i < end; ++i) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                _bytes[_length++] = (byte)c;
+                continue;
+            }
+            ensure(4 + end - i);
+            if (c < 0x800) {
+                _bytes[_length++] = (byte)(0xc0 | (c >> 6));
+                _bytes[_length++] = (byte)(0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, text.charAt(++i));
+                _bytes[_length++] = (byte)(0xf0 | (cp >> 18));
+                _bytes[_length++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+                _bytes[_length++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+                _bytes[_length++] = (byte)(0x80 | (cp & 0x3f));
+            }
+            else if (Character.isSurrogate(c))
+                _bytes[_length++] = '?';     // Unpaired surrogate, same as String.getBytes()
+            else {
+                _bytes[_length++] = (byte)(0xe0 | (c >> 12));
+                _bytes[_length++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+                _bytes[_length++] = (byte)(0x80 | (c & 0x3f));
+            }
+        }
+        return this;
+    }
+
+    /**Append a quoted and escaped json string.*/
+    public Utf8JsonBuffer appendString(CharSequence text) {
+        append('"');
+        final int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; ++i) {
+            final char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\')     continue;
+            appendUtf8(text, start, i);
+            start = i + 1;
+            ensure(6);
+            _bytes[_length++] = '\\';
+            switch (c) {
+            case '"':   _bytes[_length++] = '"';    break;
+            case '\\':  _bytes[_length++] = '\\';   break;
+            case '\n':  _bytes[_length++] = 'n';    break;
+            case '\r':  _bytes[_length++] = 'r';    break;
+            case '\t':  _bytes[_length++] = 't';    break;
+            case '\b':  _bytes[_length++] = 'b';    break;
+            case '\f':  _bytes[_length++] = 'f';    break;
+            default:
+                _bytes[_length++] = 'u';
+                _bytes[_length++] = '0';
+                _bytes[_length++] = '0';
+                _bytes[_length++] = HexDigits[c >> 4];
+                _bytes[_length++] = HexDigits[c & 0xf];
+                break;
+            }
+        }
+        appendUtf8(text, start, length);
+        return append('"');
+    }
+
+    /**Decode written bytes as string, for debugging only.*/
+    @Override public String toString() { return new String(_bytes, 0, _length, StandardCharsets.UTF_8); }
+}
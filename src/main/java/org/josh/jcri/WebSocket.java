@@ -1,9 +1,15 @@
 package org.josh.jcri;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -13,7 +19,7 @@ import javax.annotation.ParametersAreNonnullByDefault;
  @author Joshua
  @since 1.0 */
 @ParametersAreNonnullByDefault
-class WebSocket extends WebSocketClient {
+class WebSocket extends WebSocketClient implements Transport {
     /**Message received handler.*/
     private Consumer<String> _messageHandler;
     /**Web socket error handler.*/
@@ -72,9 +78,37 @@ class WebSocket extends WebSocketClient {
     /**Set connection closed handler.*/
     public final void setCloseHandler(Consumer<Integer> onCloseHandler) { _closeHandler = onCloseHandler; }
 
+    /**Send UTF-8 encoded text message without decoding and encoding it again.
+     Content of given buffer is copied into frame, so buffer can be reused after this method returns.
+     @throws org.java_websocket.exceptions.WebsocketNotConnectedException if connection is not opened. */
+    @Override public void sendText(ByteBuffer utf8Text) {
+        sendFrame(textFrameOf(utf8Text));
+    }
+
+    /**Send multiple UTF-8 encoded text messages in a single write pass.
+     Content of given buffers are copied into frames, so buffers can be reused after this method returns.
+     @throws org.java_websocket.exceptions.WebsocketNotConnectedException if connection is not opened. */
+    @Override public void sendText(Collection<ByteBuffer> utf8Texts) {
+        final List<Framedata> frames = new ArrayList<>(utf8Texts.size());
+        for (ByteBuffer text : utf8Texts)   frames.add(textFrameOf(text));
+        sendFrame(frames);
+    }
+
+    @Override public String getEndpoint() { return getURI().toString(); }
+    /**Web socket is reconnected to the same url.*/
+    @Override public boolean canReconnect() { return true; }
+
+    /**Create a final text frame with given UTF-8 encoded payload.*/
+    private static TextFrame textFrameOf(ByteBuffer utf8Text) {
+        final TextFrame frame = new TextFrame();
+        frame.setPayload(utf8Text);
+        frame.setFin(true);
+        return frame;
+    }
+
     /**When connect accepted by server.*/
     @Override public void onOpen(ServerHandshake handshake) {
-        System.out.println("Connection established: " + handshake.toString());
+        // Do nothing, connectBlocking() returns
     }
 
     /**When connection is closed by server.*/
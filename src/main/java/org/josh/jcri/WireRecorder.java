@@ -0,0 +1,101 @@
+package org.josh.jcri;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**In-memory ring buffer of the last N raw frames sent to and received from browser.
+ Recording is lock-free: each frame claims a slot by an atomic sequence number and overwrites the
+ oldest frame. Received frames are kept by reference, sent frames are copied from the pooled command
+ buffer. Dump the frames when a failure happens to see what is exchanged just before it.
+ @see JCRI#enableWireRecorder(int)
+ @author Joshua */
+@ParametersAreNonnullByDefault
+public final class WireRecorder {
+    /**Recorded frames, size is power of 2.*/
+    private final AtomicReferenceArray<Frame> _frames;
+    private final int _mask;
+    /**Sequence number of next frame.*/
+    private final AtomicLong _sequence = new AtomicLong(0);
+
+    /**Create recorder.
+     @param capacity count of kept frames, rounded up to power of 2.
+     @throws IllegalArgumentException if capacity is not positive. */
+    public WireRecorder(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        int size = 1;
+        while (size < capacity && size < (1 << 30))     size <<= 1;
+        _frames = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+    }
+
+    /**Get count of kept frames.*/
+    public int getCapacity() { return _frames.length(); }
+    /**Get count of all frames recorded since created, including overwritten frames.*/
+    public long getRecordedCount() { return _sequence.get(); }
+
+    /**Record a sent frame.
+     @param utf8 UTF-8 encoded command, bytes are copied. */
+    void onSent(byte[] utf8, int offset, int length) {
+        record(new Frame(true, Arrays.copyOfRange(utf8, offset, offset + length)));
+    }
+
+    /**Record a received frame.*/
+    void onReceived(String text) { record(new Frame(false, text)); }
+
+    private void record(Frame frame) {
+        final long sequence = _sequence.getAndIncrement();
+        frame.sequence = sequence;
+        _frames.set((int)sequence & _mask, frame);
+    }
+
+    /**Get kept frames from the oldest to the newest. Each frame is formatted as
+     <pre>"#sequence timestamp &gt;&gt; text"</pre> for sent frame, or with <pre>&lt;&lt;</pre> for
+     received frame.*/
+    public List<String> getFrames() {
+        final List<Frame> frames = new ArrayList<>(_frames.length());
+        for (int i = 0; i < _frames.length(); ++i) {
+            final Frame frame = _frames.get(i);
+            if (frame != null)  frames.add(frame);
+        }
+        frames.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        final List<String> lines = new ArrayList<>(frames.size());
+        for (Frame frame : frames)  lines.add(frame.toString());
+        return lines;
+    }
+
+    /**Write kept frames from the oldest to the newest, one frame per line.
+     @see #getFrames() */
+    public void dump(Appendable out) throws IOException {
+        for (String line : getFrames())     out.append(line).append(System.lineSeparator());
+    }
+
+    /**Discard all kept frames.*/
+    public void clear() {
+        for (int i = 0; i < _frames.length(); ++i)  _frames.set(i, null);
+    }
+
+    /**Single recorded frame.*/
+    private static final class Frame {
+        private final boolean sent;
+        private final long timestamp = System.currentTimeMillis();
+        /**Text of received frame, or UTF-8 bytes of sent frame.*/
+        private final Object content;
+        private long sequence;
+
+        private Frame(boolean sent, Object content) { this.sent = sent; this.content = content; }
+
+        @Override public String toString() {
+            final String text = content instanceof byte[] ?
+                new String((byte[])content, StandardCharsets.UTF_8) : (String)content;
+            return "#" + sequence + " " + Instant.ofEpochMilli(timestamp) + (sent ? " >> " : " << ") + text;
+        }
+    }
+}
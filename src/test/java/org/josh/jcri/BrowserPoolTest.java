@@ -0,0 +1,124 @@
+package org.josh.jcri;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**Tests of {@link BrowserPool} with a script standing in for browser executable, which runs
+ {@link FakeBrowser}.
+ @author Joshua */
+public class BrowserPoolTest {
+    @Rule public final TemporaryFolder _folder = new TemporaryFolder();
+    /**File where script appends arguments of each launch.*/
+    private Path _arguments;
+    private List<String> _command;
+
+    @Before public void createScript() throws Exception {
+        assumeTrue("Script needs a POSIX shell", new File("/bin/sh").canExecute());
+        _arguments = _folder.getRoot().toPath().resolve("arguments");
+        final Path script = _folder.getRoot().toPath().resolve("fake-browser");
+        final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Files.write(script, ("#!/bin/sh\n"
+            + "echo \"$@\" >> '" + _arguments + "'\n"
+            + "exec '" + java + "' -cp '" + System.getProperty("java.class.path") + "' "
+            + FakeBrowser.class.getName() + " \"$@\"\n").getBytes(StandardCharsets.UTF_8));
+        assertTrue(script.toFile().setExecutable(true));
+        _command = Collections.singletonList(script.toString());
+    }
+
+    /**Get temporary user data directories of all launched browsers.*/
+    private List<Path> userDataDirs() throws Exception {
+        final List<Path> directories = new ArrayList<>();
+        if (!Files.exists(_arguments))  return directories;
+        for (String line : Files.readAllLines(_arguments, StandardCharsets.UTF_8)) {
+            for (String argument : line.split(" ")) {
+                if (argument.startsWith("--user-data-dir="))
+                    directories.add(Paths.get(argument.substring("--user-data-dir=".length())));
+            }
+        }
+        return directories;
+    }
+
+    /**Wait until all launched browsers' user data directories are deleted.*/
+    private void assertCleanedUp() throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Path directory : userDataDirs()) {
+            while (Files.exists(directory) && System.nanoTime() - deadline < 0)
+                TimeUnit.MILLISECONDS.sleep(20);
+            assertFalse("Not deleted: " + directory, Files.exists(directory));
+        }
+    }
+
+    private static boolean ping(JCRI connection) throws Exception {
+        return connection.send("Browser.getVersion", "{}", EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)))
+            .get(10, TimeUnit.SECONDS).isSuccess();
+    }
+
+    @Test public void leaseRecycleAndClose() throws Exception {
+        final BrowserPool pool = new BrowserPool(_command, 1, null).setMaxUses(2).start();
+        final URI first;
+        final BrowserPool.Lease last;
+        try {
+            assertEquals(1, pool.getIdleCount());
+            try (BrowserPool.Lease lease = pool.lease(10, TimeUnit.SECONDS)) {
+                assertEquals(1, lease.getUseCount());
+                assertTrue(ping(lease.getConnection()));
+                first = lease.getDebuggerUrl();
+            }
+            try (BrowserPool.Lease lease = pool.lease(10, TimeUnit.SECONDS)) {
+                assertEquals("Returned browser is leased again", first, lease.getDebuggerUrl());
+                assertEquals(2, lease.getUseCount());
+            }
+            assertEquals("Recycled after max uses", 1, pool.getRecycleCount());
+            last = pool.lease(20, TimeUnit.SECONDS);
+            assertNotEquals(first, last.getDebuggerUrl());
+            assertEquals(1, last.getUseCount());
+            assertTrue(ping(last.getConnection()));
+            assertEquals(2, pool.getLaunchCount());
+        }
+        finally {
+            pool.close();
+        }
+        assertTrue(pool.isClosed());
+        assertTrue("Leased browser is stopped", last.getConnection().isClosed());
+        final JCRI connection = JCRI.create(last.getDebuggerUrl(), ExecutionMode.SAME_THREAD);
+        try {
+            assertFalse("Browser process is stopped", connection.connect().get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            connection.close();
+        }
+        assertEquals(2, userDataDirs().size());
+        assertCleanedUp();
+    }
+
+    @Test public void interruptedStartClosesPool() throws Exception {
+        final BrowserPool pool = new BrowserPool(_command, 2, null);
+        Thread.currentThread().interrupt();
+        try {
+            pool.start();
+            fail("Started while interrupted");
+        }
+        catch (InterruptedException e) {
+            assertTrue("Interrupt status is kept", Thread.interrupted());
+        }
+        assertTrue(pool.isClosed());
+        //! Launches already submitted stop their browsers
+        TimeUnit.SECONDS.sleep(1);
+        assertCleanedUp();
+    }
+}
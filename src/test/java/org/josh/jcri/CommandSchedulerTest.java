@@ -0,0 +1,93 @@
+package org.josh.jcri;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**Tests of {@link CommandScheduler} against {@link FakeBrowser}.
+ @author Joshua */
+public class CommandSchedulerTest {
+    private FakeBrowser _browser;
+    private JCRI _connection;
+
+    private JCRI connect(FakeBrowser browser, CommandScheduler scheduler) throws Exception {
+        _browser = browser;
+        _connection = JCRI.create(browser.getUrl(), ExecutionMode.SAME_THREAD);
+        assertTrue(_connection.connect().get(10, TimeUnit.SECONDS));
+        _connection.setCommandScheduler(scheduler);
+        return _connection;
+    }
+
+    @After public void tearDown() throws Exception {
+        if (_connection != null)    _connection.close();
+        if (_browser != null)       _browser.stop();
+    }
+
+    private static CompletableFuture<EmptyResult> send(JCRI connection, String method) {
+        return connection.send(method, "{}", EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+    }
+
+    /**Connection is lost while window is full and commands are queued: queued commands are never sent
+     through closed transport, and each retried command is sent exactly once after reconnected.*/
+    @Test public void disconnectWithFullWindow() throws Exception {
+        final CommandScheduler scheduler = new CommandScheduler(2, 0, 2);
+        final JCRI connection = connect(FakeBrowser.start(false), scheduler);
+        connection.setReconnectPolicy(new ReconnectPolicy(10, 100, TimeUnit.MILLISECONDS, 0, 50)
+            .retryIdempotent(ReconnectPolicy.DefaultIdempotentMethods));
+        final CompletableFuture<EmptyResult> sentEvaluate = send(connection, "Runtime.evaluate");
+        final List<CompletableFuture<EmptyResult>> retried = new ArrayList<>();
+        retried.add(send(connection, "DOM.getDocument"));
+        retried.add(send(connection, "DOM.getDocument"));
+        final CompletableFuture<EmptyResult> queuedEvaluate = send(connection, "Runtime.evaluate");
+        retried.add(send(connection, "Page.getFrameTree"));
+        assertTrue(_browser.awaitReceived(2, 10, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getInFlightCount());
+        assertEquals(3, scheduler.getQueuedCount(CommandPriority.NORMAL));
+
+        _browser.setReplying(true);
+        _browser.closeConnections();
+        for (CompletableFuture<EmptyResult> future : retried)
+            assertTrue(future.get(10, TimeUnit.SECONDS).isSuccess());
+        for (CompletableFuture<EmptyResult> future : Arrays.asList(sentEvaluate, queuedEvaluate)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Not retryable method is sent again");
+            }
+            catch (ExecutionException e) {
+                // Expected
+            }
+        }
+        assertEquals(2, _browser.getConnectionCount());
+        assertEquals("Queued commands are not sent before lost", 2, _browser.getReceived(0).size());
+        final List<String> resent = _browser.getReceived(1);
+        final Set<Long> ids = new HashSet<>();
+        for (String command : resent)   assertTrue("Sent twice: " + command, ids.add(FakeBrowser.idOf(command)));
+        assertEquals(resent.toString(), 3, resent.size());
+        assertEquals(0, scheduler.getQueuedCount(CommandPriority.NORMAL));
+        assertEquals(0, scheduler.getInFlightCount());
+    }
+
+    /**Critical commands waiting browser's reply never take slots of in-flight window.*/
+    @Test public void criticalTakesNoWindowSlot() throws Exception {
+        final CommandScheduler scheduler = new CommandScheduler(1, 0, 1)
+            .prioritize("Runtime.evaluate", CommandPriority.CRITICAL);
+        final JCRI connection = connect(FakeBrowser.start(false), scheduler);
+        send(connection, "Runtime.evaluate");
+        send(connection, "Runtime.evaluate");
+        send(connection, "DOM.getDocument");
+        send(connection, "DOM.getDocument");
+        assertTrue(_browser.awaitReceived(3, 10, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getInFlightCount());
+        assertEquals(1, scheduler.getQueuedCount(CommandPriority.NORMAL));
+        assertEquals(3, scheduler.getSentCount());
+    }
+}
@@ -0,0 +1,108 @@
+package org.josh.jcri;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+/**Debugger endpoint standing in for browser in tests, which replies an empty result to every command.
+ Its {@link #main(String[])} stands in for browser executable: it prints debugger url to standard
+ error as browser does, and runs until it is killed.
+ @author Joshua */
+final class FakeBrowser extends WebSocketServer {
+    private static final Pattern IdPattern = Pattern.compile("\"id\":(\\d+)");
+
+    /**Received commands of each connection, in connecting order.*/
+    private final List<List<String>> _received = new CopyOnWriteArrayList<>();
+    private final Map<WebSocket, List<String>> _receivedByConnection = new ConcurrentHashMap<>();
+    private final CountDownLatch _started = new CountDownLatch(1);
+    private volatile boolean _replying;
+
+    private FakeBrowser(boolean replying) {
+        super(new InetSocketAddress("127.0.0.1", 0));
+        _replying = replying;
+    }
+
+    /**Start endpoint and wait until it is listening.
+     @param replying whether commands are replied, otherwise they wait forever. */
+    static FakeBrowser start(boolean replying) throws InterruptedException {
+        final FakeBrowser browser = new FakeBrowser(replying);
+        browser.start();
+        if (!browser._started.await(10, TimeUnit.SECONDS))  throw new IllegalStateException("Not started");
+        return browser;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final FakeBrowser browser = start(true);
+        System.err.println("Fake browser started with " + args.length + " arguments");
+        System.err.println("DevTools listening on " + browser.getUrl());
+        Thread.sleep(Long.MAX_VALUE);
+    }
+
+    /**Get Id of a serialized command.*/
+    static long idOf(String command) {
+        final Matcher matcher = IdPattern.matcher(command);
+        if (!matcher.find())    throw new IllegalArgumentException("No Id: " + command);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /**Get browser level debugger url.*/
+    URI getUrl() { return URI.create("ws://127.0.0.1:" + getPort() + "/devtools/browser/fake"); }
+
+    /**Set whether commands received later are replied.*/
+    void setReplying(boolean replying) { _replying = replying; }
+
+    /**Get count of accepted connections, including closed ones.*/
+    int getConnectionCount() { return _received.size(); }
+
+    /**Get commands received by given connection.
+     @param connection index of connection in connecting order. */
+    List<String> getReceived(int connection) { return new ArrayList<>(_received.get(connection)); }
+
+    /**Wait until given count of commands are received by all connections.
+     @return false if not received in time. */
+    boolean awaitReceived(int count, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            int received = 0;
+            for (List<String> commands : _received)     received += commands.size();
+            if (received >= count)  return true;
+            if (System.nanoTime() - deadline >= 0)  return false;
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    /**Close all open connections, as if browser crashed.*/
+    void closeConnections() {
+        for (WebSocket connection : getConnections())   connection.close();
+    }
+
+    @Override public void onStart() { _started.countDown(); }
+
+    @Override public void onOpen(WebSocket connection, ClientHandshake handshake) {
+        final List<String> commands = new CopyOnWriteArrayList<>();
+        _receivedByConnection.put(connection, commands);
+        _received.add(commands);
+    }
+
+    @Override public void onMessage(WebSocket connection, String message) {
+        _receivedByConnection.get(connection).add(message);
+        if (_replying)  connection.send("{\"id\":" + idOf(message) + ",\"result\":{}}");
+    }
+
+    @Override public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+        _receivedByConnection.remove(connection);
+    }
+
+    @Override public void onError(WebSocket connection, Exception e) { }
+}
@@ -0,0 +1,159 @@
+package org.josh.jcri;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**Tests of {@link PendingTable}.
+ @author Joshua */
+public class PendingTableTest {
+    private final EventCenter _evt = new EventCenter(null, ExecutionMode.SAME_THREAD);
+
+    private PendingMethod<EmptyResult> methodOf(long id) {
+        return new PendingMethod<>(_evt, id, EmptyResult.class, e -> new EmptyResult(ResultBase.ofError(e)));
+    }
+
+    @Test public void putAndRemove() {
+        final PendingTable table = new PendingTable(4, 16);
+        final PendingMethod<?> method = methodOf(1);
+        assertTrue(table.put(method));
+        assertFalse("Same Id is put twice", table.put(methodOf(1)));
+        assertEquals(1, table.size());
+        assertNull(table.remove(2));
+        assertSame(method, table.remove(1));
+        assertNull(table.remove(1));
+        assertEquals(0, table.size());
+    }
+
+    /**Ids keep increasing past ring size, slots are reused without growing.*/
+    @Test public void wrapAround() {
+        final PendingTable table = new PendingTable(4, 4);
+        final ArrayDeque<PendingMethod<?>> waiting = new ArrayDeque<>();
+        for (long id = 0; id < 1000; ++id) {
+            final PendingMethod<?> method = methodOf(id);
+            assertTrue(table.put(method));
+            waiting.add(method);
+            if (waiting.size() == 2) {
+                final PendingMethod<?> oldest = waiting.poll();
+                assertSame(oldest, table.remove(oldest.getId()));
+            }
+        }
+        assertEquals(4, table.capacity());
+        assertEquals(1, table.size());
+        assertSame(waiting.peek(), table.remove(waiting.peek().getId()));
+        assertEquals(0, table.size());
+    }
+
+    /**Older method which occupies a slot while ring is less than half full is moved to overflow map,
+     and is still found by its Id.*/
+    @Test public void stragglerOverflow() {
+        final PendingTable table = new PendingTable(8, 8);
+        final PendingMethod<?> straggler = methodOf(0);
+        assertTrue(table.put(straggler));
+        for (long id = 1; id < 100; ++id) {
+            final PendingMethod<?> method = methodOf(id);
+            assertTrue(table.put(method));
+            assertSame(method, table.remove(id));
+        }
+        assertEquals("Ring does not grow for a straggler", 8, table.capacity());
+        assertEquals(1, table.size());
+        assertFalse("Moved straggler is still found by Id", table.put(methodOf(0)));
+        assertSame(straggler, table.remove(0));
+        assertEquals(0, table.size());
+    }
+
+    @Test public void growWhenHalfFull() {
+        final PendingTable table = new PendingTable(4, 64);
+        final List<PendingMethod<?>> methods = new ArrayList<>();
+        for (long id = 0; id < 40; ++id) {
+            final PendingMethod<?> method = methodOf(id);
+            assertTrue(table.put(method));
+            methods.add(method);
+        }
+        assertEquals(64, table.capacity());
+        assertEquals(40, table.size());
+        for (PendingMethod<?> method : methods)     assertSame(method, table.remove(method.getId()));
+        assertEquals(0, table.size());
+    }
+
+    @Test public void rejectAtMaxCapacity() {
+        final PendingTable table = new PendingTable(2, 4);
+        for (long id = 0; id < 4; ++id)     assertTrue(table.put(methodOf(id)));
+        try {
+            table.put(methodOf(4));
+            fail("Put into full table");
+        }
+        catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(4, table.capacity());
+        assertEquals(4, table.size());
+        //! Room is made by removing any method
+        assertNotNull(table.remove(2));
+        assertTrue(table.put(methodOf(4)));
+        assertEquals(4, table.size());
+    }
+
+    @Test public void drainIncludesOverflow() {
+        final PendingTable table = new PendingTable(8, 8);
+        assertTrue(table.put(methodOf(0)));
+        assertTrue(table.put(methodOf(8)));     // Moves method 0 into overflow map
+        assertTrue(table.put(methodOf(3)));
+        final List<Long> drained = new ArrayList<>();
+        table.drain(method -> drained.add(method.getId()));
+        drained.sort(null);
+        assertEquals(Arrays.asList(0L, 3L, 8L), drained);
+        assertEquals(0, table.size());
+    }
+
+    /**Many callers put and remove while ring grows from its smallest size, every method is removed
+     exactly once by its own Id.*/
+    @Test public void growWhileCallersRace() throws Exception {
+        final PendingTable table = new PendingTable(2, 1 << 16);
+        final AtomicLong nextId = new AtomicLong(0);
+        final int threads = 8;
+        final int perThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    final List<PendingMethod<?>> waiting = new ArrayList<>();
+                    for (int i = 0; i < perThread; ++i) {
+                        final PendingMethod<?> method = methodOf(nextId.getAndIncrement());
+                        assertTrue(table.put(method));
+                        waiting.add(method);
+                        //! Keep a varying number of methods waiting, so ring grows and slots collide
+                        if (waiting.size() > 256 || ThreadLocalRandom.current().nextInt(4) == 0) {
+                            final PendingMethod<?> done = waiting.remove(
+                                ThreadLocalRandom.current().nextInt(waiting.size()));
+                            assertSame(done, table.remove(done.getId()));
+                        }
+                    }
+                    for (PendingMethod<?> method : waiting)     assertSame(method, table.remove(method.getId()));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results)    result.get(60, TimeUnit.SECONDS);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0, table.size());
+        assertTrue("Ring grows under load: " + table.capacity(), table.capacity() > 2);
+    }
+}
@@ -0,0 +1,137 @@
+package org.josh.jcri;
+
+import java.util.Arrays;
+import java.util.Collections;
+import javax.annotation.Nullable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**Tests of invalidation guarantees of {@link ResultCache}.
+ @author Joshua */
+public class ResultCacheTest {
+    private static final String Document = "DOM.getDocument";
+    private static final String FrameTree = "Page.getFrameTree";
+
+    private final ResultCache _cache = new ResultCache(16)
+        .cache(Document, Collections.emptyList(), Arrays.asList("DOM.*", "Page.frameNavigated"))
+        .cache(FrameTree, Collections.singletonList("Page"), Collections.singletonList("Page.frameNavigated"));
+
+    private static String keyOf(@Nullable String sessionId, String method) {
+        final Utf8JsonBuffer buffer = new Utf8JsonBuffer().appendAscii("{\"depth\":1}");
+        return ResultCache.keyOf(sessionId, method, buffer, 0, buffer.length());
+    }
+
+    /**Send a method and store its reply as the cache does, with given action between them.
+     @return stored result. */
+    private ResultBase fetch(@Nullable String sessionId, String method, Runnable whileInFlight) {
+        final long generation = _cache.generationOf(sessionId, method);
+        whileInFlight.run();
+        final ResultBase result = new EmptyResult();
+        _cache.put(keyOf(sessionId, method), sessionId, method, generation, result);
+        return result;
+    }
+
+    @Nullable private ResultBase lookup(@Nullable String sessionId, String method) {
+        return _cache.get(keyOf(sessionId, method), _cache.generationOf(sessionId, method));
+    }
+
+    @Test public void serveStoredResult() {
+        final ResultBase result = fetch(null, Document, () -> { });
+        assertSame(result, lookup(null, Document));
+        assertEquals(1, _cache.getHitCount());
+        assertNull("Other session is not served", lookup("S1", Document));
+    }
+
+    @Test public void replyCrossingInvalidatingEventIsNotStored() {
+        fetch(null, Document, () -> _cache.onEvent("DOM.childNodeInserted", null));
+        assertNull(lookup(null, Document));
+        assertEquals(0, _cache.size());
+    }
+
+    @Test public void replyCrossingEventOfOtherSessionIsStored() {
+        final ResultBase result = fetch(null, Document, () -> _cache.onEvent("DOM.childNodeInserted", "S1"));
+        assertSame(result, lookup(null, Document));
+    }
+
+    @Test public void replyCrossingMutatingMethodIsNotStored() {
+        fetch(null, Document, () -> _cache.onSending(null, "Runtime.evaluate"));
+        assertNull(lookup(null, Document));
+        assertEquals(0, _cache.size());
+    }
+
+    @Test public void replyCrossingReadOnlyMethodIsStored() {
+        final ResultBase result = fetch(null, Document, () -> _cache.onSending(null, "DOM.querySelector"));
+        assertSame(result, lookup(null, Document));
+    }
+
+    @Test public void eventInvalidatesStoredResult() {
+        fetch(null, Document, () -> { });
+        _cache.onEvent("Page.frameNavigated", null);
+        assertNull(lookup(null, Document));
+        fetch(null, Document, () -> { });
+        _cache.onSending(null, "DOM.setAttributeValue");
+        assertNull(lookup(null, Document));
+    }
+
+    @Test public void failedResultIsNotStored() {
+        _cache.put(keyOf(null, Document), null, Document, _cache.generationOf(null, Document),
+            new EmptyResult(ResultBase.ofError("No node")));
+        assertEquals(0, _cache.size());
+    }
+
+    @Test public void requiredDomainsGateCaching() {
+        assertEquals(-1, _cache.generationOf(null, FrameTree));
+        fetch(null, FrameTree, () -> { });
+        assertEquals("Not stored before domain is enabled", 0, _cache.size());
+        assertNull(lookup(null, FrameTree));
+
+        _cache.onSending(null, "Page.enable");
+        assertTrue(_cache.generationOf(null, FrameTree) >= 0);
+        assertEquals(-1, _cache.generationOf("S1", FrameTree));
+        final ResultBase result = fetch(null, FrameTree, () -> { });
+        assertSame(result, lookup(null, FrameTree));
+
+        _cache.onSending(null, "Page.disable");
+        assertEquals(-1, _cache.generationOf(null, FrameTree));
+        assertNull(lookup(null, FrameTree));
+    }
+
+    @Test public void replyCrossingDomainDisabledIsNotStored() {
+        _cache.onSending(null, "Page.enable");
+        fetch(null, FrameTree, () -> _cache.onSending(null, "Page.disable"));
+        _cache.onSending(null, "Page.enable");
+        assertNull(lookup(null, FrameTree));
+    }
+
+    @Test public void resetDropsState() {
+        _cache.onSending(null, "Page.enable");
+        fetch(null, FrameTree, () -> { });
+        fetch(null, Document, () -> { });
+        _cache.reset();
+        assertEquals(0, _cache.size());
+        assertEquals("Enabled domains are forgotten", -1, _cache.generationOf(null, FrameTree));
+        assertNull(lookup(null, Document));
+    }
+
+    @Test public void replyCrossingRemovedSessionIsNotStored() {
+        fetch("S1", Document, () -> _cache.removeSession("S1"));
+        assertNull(lookup("S1", Document));
+        fetch(null, Document, () -> _cache.reset());
+        assertNull(lookup(null, Document));
+        assertEquals(0, _cache.size());
+    }
+
+    @Test public void removeSessionDropsState() {
+        _cache.onSending("S1", "Page.enable");
+        _cache.onSending(null, "Page.enable");
+        fetch("S1", FrameTree, () -> { });
+        fetch("S1", Document, () -> { });
+        final ResultBase root = fetch(null, Document, () -> { });
+        _cache.removeSession("S1");
+        assertEquals("Enabled domains are forgotten", -1, _cache.generationOf("S1", FrameTree));
+        assertNull(lookup("S1", Document));
+        assertSame("Other sessions are kept", root, lookup(null, Document));
+        assertTrue(_cache.generationOf(null, FrameTree) >= 0);
+    }
+}
@@ -0,0 +1,157 @@
+package org.josh.jcri;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**Write and read round trip of {@link TrafficLog} and {@link TrafficReplayer}.
+ @author Joshua */
+public class TrafficLogTest {
+    @Rule public final TemporaryFolder _folder = new TemporaryFolder();
+
+    private static String eventOf(int n, String text, @Nullable String sessionId) {
+        return "{\"method\":\"Page.lifecycleEvent\",\"params\":{\"n\":" + n + ",\"name\":\"" + text + "\"}"
+            + (sessionId != null ? ",\"sessionId\":\"" + sessionId + "\"}" : "}");
+    }
+
+    private static void send(TrafficLog log, @Nullable String sessionId, String command) {
+        final byte[] utf8 = command.getBytes(StandardCharsets.UTF_8);
+        log.onSent(sessionId, utf8, 0, utf8.length);
+    }
+
+    /**Create an unconnected connection which keeps received frames.*/
+    private static JCRI newReplayTarget() {
+        final JCRI connection = JCRI.create(URI.create("ws://localhost:1/replay"), ExecutionMode.SAME_THREAD);
+        connection.enableWireRecorder(4096);
+        return connection;
+    }
+
+    /**Get received frames kept by connection's recorder, in receiving order.*/
+    private static List<String> receivedFrames(JCRI connection) {
+        final List<String> frames = new ArrayList<>();
+        for (String line : connection.getWireRecorder().getFrames())
+            frames.add(line.substring(line.indexOf(" << ") + 4));
+        return frames;
+    }
+
+    @Test public void roundTripAcrossRegions() throws Exception {
+        final Path file = _folder.getRoot().toPath().resolve("regions.jcrilog");
+        final List<String> expected = new ArrayList<>();
+        //! Small regions, so records keep crossing region boundary
+        final TrafficLog log = new TrafficLog(file, 256);
+        for (int i = 0; i < 200; ++i) {
+            final String frame = eventOf(i, (i % 3 == 0 ? "lö€😀d" : "load") + new String(new char[i % 50]).replace('\0', 'x'), null);
+            log.onReceived(frame);
+            expected.add(frame);
+            if (i % 2 == 0)     send(log, null, "{\"id\":" + i + ",\"method\":\"DOM.getDocument\",\"params\":{}}");
+        }
+        assertEquals(300, log.getRecordCount());
+        final long size = log.getSize();
+        log.close();
+        assertTrue(log.isClosed());
+        assertEquals("File is truncated to recorded size", size, Files.size(file));
+
+        final JCRI connection = newReplayTarget();
+        try (TrafficReplayer replayer = new TrafficReplayer(file)) {
+            assertEquals("Sent frames are skipped", 200, replayer.replay(connection));
+            assertEquals(expected, receivedFrames(connection));
+            //! Log can be replayed again
+            assertEquals(200, replayer.replay(connection));
+        }
+    }
+
+    @Test public void frameLargerThanRegion() throws Exception {
+        final Path file = _folder.getRoot().toPath().resolve("large.jcrilog");
+        final String large = eventOf(1, new String(new char[20000]).replace('\0', 'y'), "S1");
+        final String small = eventOf(2, "load", null);
+        try (TrafficLog log = new TrafficLog(file, 64)) {
+            log.onReceived(small);
+            log.onReceived(large);
+            log.onReceived(small);
+        }
+        final JCRI connection = newReplayTarget();
+        try (TrafficReplayer replayer = new TrafficReplayer(file)) {
+            assertEquals(3, replayer.replay(connection));
+        }
+        final List<String> frames = receivedFrames(connection);
+        assertEquals(3, frames.size());
+        assertEquals(small, frames.get(0));
+        assertEquals(large, frames.get(1));
+        assertEquals(small, frames.get(2));
+    }
+
+    /**Log which is not closed, such as after a crash, is read up to the end mark after the last
+     record, although the rest of mapped region is in file.*/
+    @Test public void unclosedLog() throws Exception {
+        final Path file = _folder.getRoot().toPath().resolve("unclosed.jcrilog");
+        final TrafficLog log = new TrafficLog(file, 4096);
+        try {
+            for (int i = 0; i < 5; ++i)     log.onReceived(eventOf(i, "load", null));
+            assertTrue("Mapped region is larger than records", Files.size(file) > log.getSize());
+            final JCRI connection = newReplayTarget();
+            try (TrafficReplayer replayer = new TrafficReplayer(file)) {
+                assertEquals(5, replayer.replay(connection));
+            }
+            assertEquals(eventOf(4, "load", null), receivedFrames(connection).get(4));
+        }
+        finally {
+            log.close();
+        }
+    }
+
+    @Test public void filterBySession() throws Exception {
+        final Path file = _folder.getRoot().toPath().resolve("sessions.jcrilog");
+        final List<String> expected = new ArrayList<>();
+        try (TrafficLog log = new TrafficLog(file)) {
+            for (int i = 0; i < 30; ++i) {
+                final String sessionId = i % 3 == 0 ? null : i % 3 == 1 ? "S1" : "S2";
+                final String frame = eventOf(i, "load", sessionId);
+                log.onReceived(frame);
+                if ("S1".equals(sessionId))     expected.add(frame);
+                send(log, "S1", "{\"id\":" + i + ",\"method\":\"DOM.getDocument\",\"sessionId\":\"S1\",\"params\":{}}");
+            }
+            //! Session Id inside params is not the session of frame
+            log.onReceived("{\"method\":\"Target.detachedFromTarget\",\"params\":{\"sessionId\":\"S1\"}}");
+        }
+        final JCRI connection = newReplayTarget();
+        try (TrafficReplayer replayer = new TrafficReplayer(file)) {
+            assertEquals(10, replayer.replay(connection, "S1"));
+            assertEquals(0, replayer.replay(newReplayTarget(), "S3"));
+        }
+        assertEquals(expected, receivedFrames(connection));
+    }
+
+    @Test public void realTimeKeepsIntervals() throws Exception {
+        final Path file = _folder.getRoot().toPath().resolve("realtime.jcrilog");
+        try (TrafficLog log = new TrafficLog(file)) {
+            log.onReceived(eventOf(1, "load", null));
+            TimeUnit.MILLISECONDS.sleep(200);
+            log.onReceived(eventOf(2, "load", null));
+        }
+        try (TrafficReplayer replayer = new TrafficReplayer(file)) {
+            final long start = System.nanoTime();
+            assertEquals(2, replayer.replay(newReplayTarget()));
+            assertTrue("As fast as possible", System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+            final long realStart = System.nanoTime();
+            assertEquals(2, replayer.setRealTime(true).replay(newReplayTarget()));
+            assertTrue("Real time", System.nanoTime() - realStart >= TimeUnit.MILLISECONDS.toNanos(190));
+        }
+    }
+
+    @Test(expected = IOException.class) public void rejectOtherFile() throws Exception {
+        final Path file = _folder.newFile("other.log").toPath();
+        Files.write(file, "not a traffic log at all".getBytes(StandardCharsets.US_ASCII));
+        new TrafficReplayer(file).close();
+    }
+}